@@ -0,0 +1,293 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes small page files like plain text and ALTO files to their destination folder in the background. The files are first written by the
+ * extraction into a local staging folder and then handed to this writer, which copies them to the destination using a small thread pool. The
+ * files and their destination directory are synced once per batch of files instead of once per file, and the files are reported once they have
+ * been synced. This way the extraction does not have to wait for slow network file systems.
+ */
+public class AsyncPageWriter implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(AsyncPageWriter.class);
+
+    private final ExecutorService executor;
+    private final int syncBatchSize;
+
+    private final List<Future<?>> pendingWrites = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+    private final Map<Path, List<WrittenFile>> unsyncedFiles = new HashMap<>();
+    private final AtomicReference<IOException> writeError = new AtomicReference<>();
+
+    /**
+     * @param threads the number of threads writing files
+     * @param syncBatchSize the number of files written into a directory after which the files and the directory are synced
+     */
+    public AsyncPageWriter(int threads, int syncBatchSize) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "pdf-extraction-writer-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.syncBatchSize = Math.max(1, syncBatchSize);
+    }
+
+    /**
+     * Queue the given staged files to be moved into the target folder, report each file as soon as it has been written and synced and hand errors
+     * to the caller instead of reporting them from {@link #awaitCompletion()}
+     * 
+     * @param stagedFiles files written into a staging folder
+     * @param targetFolder the folder into which the files are to be written
+     * @param manifest the manifest to add the checksums of the written files to. May be null
+     * @param onWritten called from the writer threads with each written file in the target folder and its index within the staged files. May be
+     *            null
+     * @param onFailed called from the writer threads with each file in the target folder which could not be written. If null, the errors are
+     *            thrown by {@link #awaitCompletion()}
+     * @return the files in the target folder in the order of the staged files. They may not exist yet when this method returns
+     */
+    public List<File> submit(List<File> stagedFiles, Path targetFolder, ChecksumManifest manifest, ObjIntConsumer<File> onWritten,
+            BiConsumer<File, IOException> onFailed) {
+        List<File> targetFiles = new ArrayList<>(stagedFiles.size());
+        for (int i = 0; i < stagedFiles.size(); i++) {
+            File stagedFile = stagedFiles.get(i);
+            WrittenFile file = new WrittenFile(targetFolder.resolve(stagedFile.getName()), i, onWritten, onFailed);
+            pendingWrites.add(executor.submit(() -> {
+                try {
+                    write(stagedFile.toPath(), file, manifest);
+                } catch (IOException e) {
+                    fail(file, e);
+                }
+                return null;
+            }));
+            targetFiles.add(file.target.toFile());
+        }
+        return targetFiles;
+    }
+
+    private void write(Path source, WrittenFile file, ChecksumManifest manifest) throws IOException {
+        long start = System.nanoTime();
+        MessageDigest digest = manifest == null ? null : ChecksumManifest.createDigest();
+        FileChannel channel =
+                FileChannel.open(file.target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try (InputStream in = Files.newInputStream(source)) {
+            OutputStream out = Channels.newOutputStream(channel);
+            in.transferTo(digest == null ? out : new DigestOutputStream(out, digest));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (manifest != null) {
+            manifest.add(file.target.getFileName().toString(), digest);
+        }
+        Files.delete(source);
+        latencies.add(System.nanoTime() - start);
+        // the channel stays open until the content of the whole batch is synced
+        file.channel = channel;
+        List<WrittenFile> batch = addUnsyncedFile(file);
+        if (batch != null) {
+            syncBatch(file.target.getParent(), batch);
+        }
+    }
+
+    /**
+     * @return the batch of the folder of the file, if it is complete with this file
+     */
+    private List<WrittenFile> addUnsyncedFile(WrittenFile file) {
+        Path folder = file.target.getParent();
+        synchronized (unsyncedFiles) {
+            List<WrittenFile> batch = unsyncedFiles.computeIfAbsent(folder, f -> new ArrayList<>());
+            batch.add(file);
+            if (batch.size() < syncBatchSize) {
+                return null;
+            }
+            unsyncedFiles.remove(folder);
+            return batch;
+        }
+    }
+
+    /**
+     * Sync the content of the files of a batch, then the folder containing them, and report the files
+     */
+    private void syncBatch(Path folder, List<WrittenFile> batch) {
+        List<WrittenFile> synced = new ArrayList<>(batch.size());
+        for (WrittenFile file : batch) {
+            try (FileChannel channel = file.channel) {
+                channel.force(false);
+                synced.add(file);
+            } catch (IOException e) {
+                fail(file, e);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not all platforms allow syncing directories
+            logger.trace("Cannot sync directory " + folder + ": " + e.toString());
+        }
+        for (WrittenFile file : synced) {
+            if (file.onWritten != null) {
+                file.onWritten.accept(file.target.toFile(), file.index);
+            }
+        }
+    }
+
+    private void fail(WrittenFile file, IOException e) {
+        if (file.onFailed != null) {
+            file.onFailed.accept(file.target.toFile(), e);
+        } else {
+            writeError.compareAndSet(null, e);
+        }
+    }
+
+    private List<Map.Entry<Path, List<WrittenFile>>> takeUnsyncedFiles() {
+        synchronized (unsyncedFiles) {
+            List<Map.Entry<Path, List<WrittenFile>>> batches = new ArrayList<>(unsyncedFiles.entrySet());
+            unsyncedFiles.clear();
+            return batches;
+        }
+    }
+
+    /**
+     * Wait until all queued files have been written and sync the remaining files and all directories written into
+     * 
+     * @throws IOException if any of the files without error handler could not be written
+     * @throws InterruptedException
+     */
+    public void awaitCompletion() throws IOException, InterruptedException {
+        List<Future<?>> writes;
+        synchronized (pendingWrites) {
+            writes = new ArrayList<>(pendingWrites);
+            pendingWrites.clear();
+        }
+        for (Future<?> write : writes) {
+            try {
+                write.get();
+            } catch (ExecutionException e) {
+                writeError.compareAndSet(null, new IOException(e.getCause()));
+            }
+        }
+        for (Map.Entry<Path, List<WrittenFile>> batch : takeUnsyncedFiles()) {
+            syncBatch(batch.getKey(), batch.getValue());
+        }
+        IOException error = writeError.getAndSet(null);
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * @return the number of written files and the percentiles of the time needed to write a single file
+     */
+    public String getLatencyReport() {
+        List<Long> sorted;
+        synchronized (latencies) {
+            sorted = new ArrayList<>(latencies);
+        }
+        if (sorted.isEmpty()) {
+            return "No files written";
+        }
+        Collections.sort(sorted);
+        return String.format("Wrote %d files. Write latency p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms", sorted.size(),
+                getPercentile(sorted, 50), getPercentile(sorted, 90), getPercentile(sorted, 99), sorted.get(sorted.size() - 1) / 1_000_000.0);
+    }
+
+    private static double getPercentile(List<Long> sortedValues, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sortedValues.size()) - 1;
+        return sortedValues.get(Math.max(0, index)) / 1_000_000.0;
+    }
+
+    /**
+     * Stop the writer threads. Files which are still queued are discarded, so {@link #awaitCompletion()} must be called before to write all files
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Map.Entry<Path, List<WrittenFile>> batch : takeUnsyncedFiles()) {
+            for (WrittenFile file : batch.getValue()) {
+                try {
+                    file.channel.close();
+                } catch (IOException e) {
+                    logger.trace("Cannot close " + file.target + ": " + e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * A file written into its destination folder, whose channel is kept open until its batch is synced
+     */
+    private static class WrittenFile {
+
+        private final Path target;
+        private final int index;
+        private final ObjIntConsumer<File> onWritten;
+        private final BiConsumer<File, IOException> onFailed;
+        private FileChannel channel;
+
+        private WrittenFile(Path target, int index, ObjIntConsumer<File> onWritten, BiConsumer<File, IOException> onFailed) {
+            this.target = target;
+            this.index = index;
+            this.onWritten = onWritten;
+            this.onFailed = onFailed;
+        }
+    }
+}
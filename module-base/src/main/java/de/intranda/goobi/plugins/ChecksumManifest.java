@@ -0,0 +1,151 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Collects the SHA-256 checksums of the files written into one output folder and writes them into a manifest file outside of that folder, so the
+ * folder only contains the files themselves. The manifest uses the format of the 'sha256sum' tool with the names of the files, so it can be
+ * verified with 'sha256sum -c' from within the folder
+ */
+public class ChecksumManifest {
+
+    public static final String ALGORITHM = "SHA-256";
+
+    private final Path folder;
+    private final Path manifestFile;
+    private final Map<String, String> checksums = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param folder the folder containing the files
+     * @param manifestFile the file to write the checksums into
+     */
+    public ChecksumManifest(Path folder, Path manifestFile) {
+        this.folder = folder;
+        this.manifestFile = manifestFile;
+    }
+
+    /**
+     * @return a new digest for calculating checksums of the manifest's algorithm
+     */
+    public static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // every java runtime is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Add the checksum of a file within the manifest's folder
+     * 
+     * @param fileName the name of the file
+     * @param digest the digest which has processed all bytes of the file
+     */
+    public void add(String fileName, MessageDigest digest) {
+        checksums.put(fileName, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    /**
+     * Calculate and add the checksums of files which have been written by other tools, so their content could not be digested while it was written.
+     * This should be done directly after writing the files, while their content is still in the file system cache
+     * 
+     * @param files the files to add
+     * @throws IOException
+     */
+    public void addFiles(List<File> files) throws IOException {
+        for (File file : files) {
+            MessageDigest digest = createDigest();
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file.toPath()), digest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            add(file.getName(), digest);
+        }
+    }
+
+    /**
+     * @param fileName the name of a file in the manifest's folder
+     * @return the checksum of the file as lower case hex string or null if it is not known
+     */
+    public String getChecksum(String fileName) {
+        return checksums.get(fileName);
+    }
+
+    public Path getFolder() {
+        return folder;
+    }
+
+    public Path getManifestFile() {
+        return manifestFile;
+    }
+
+    public boolean isEmpty() {
+        return checksums.isEmpty();
+    }
+
+    /**
+     * Write the manifest file. Entries of an existing manifest file are kept unless they belong to a file which has been added to this manifest.
+     * Entries of files which no longer exist in the folder, like those of an earlier extraction which has been overwritten, are dropped
+     * 
+     * @return the manifest file
+     * @throws IOException
+     */
+    public Path write() throws IOException {
+        Map<String, String> entries = new ConcurrentSkipListMap<>();
+        if (Files.isRegularFile(manifestFile)) {
+            for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\\s+\\*?", 2);
+                if (parts.length == 2) {
+                    entries.put(parts[1], parts[0]);
+                }
+            }
+        }
+        entries.putAll(checksums);
+        entries.keySet().removeIf(name -> !Files.isRegularFile(folder.resolve(name)));
+        List<String> lines = new ArrayList<>(entries.size());
+        entries.forEach((name, checksum) -> lines.add(checksum + "  " + name));
+        Files.createDirectories(manifestFile.getParent());
+        Files.write(manifestFile, lines, StandardCharsets.UTF_8);
+        return manifestFile;
+    }
+}
@@ -0,0 +1,97 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Classifies pdf files by the kind of content which determines how fast the image generators can render them. Only the beginning of the file is
+ * read, which usually contains the objects of the first pages. The dictionaries of image streams are never compressed, so their filters can be
+ * found without parsing the file.
+ */
+public class DocumentFeatures {
+
+    /** no images, only text and vector graphics */
+    public static final String VECTOR = "vector";
+    /** scanned pages stored as JBIG2 or CCITT bilevel images */
+    public static final String BILEVEL = "bilevel";
+    /** scanned pages stored as JPEG or JPEG 2000 images */
+    public static final String JPEG = "jpeg";
+    /** other images, like flate compressed colour images */
+    public static final String IMAGE = "image";
+
+    public static final int DEFAULT_SCAN_BYTES = 4 * 1024 * 1024;
+
+    private static final Pattern IMAGE_PATTERN = Pattern.compile("/Subtype\\s*/Image\\b");
+    private static final Pattern BILEVEL_PATTERN = Pattern.compile("/(JBIG2Decode|CCITTFaxDecode)\\b");
+    private static final Pattern JPEG_PATTERN = Pattern.compile("/(DCTDecode|JPXDecode)\\b");
+
+    private DocumentFeatures() {
+    }
+
+    /**
+     * Classify the given pdf file
+     * 
+     * @param pdfFile the pdf file
+     * @param scanBytes the number of bytes to read from the beginning of the file
+     * @return one of {@link #VECTOR}, {@link #BILEVEL}, {@link #JPEG} and {@link #IMAGE}
+     * @throws IOException if the file cannot be read
+     */
+    public static String classify(File pdfFile, int scanBytes) throws IOException {
+        try (InputStream in = Files.newInputStream(pdfFile.toPath())) {
+            return classify(new String(in.readNBytes(scanBytes), StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    static String classify(String content) {
+        int images = count(IMAGE_PATTERN, content);
+        if (images == 0) {
+            return VECTOR;
+        }
+        int bilevel = count(BILEVEL_PATTERN, content);
+        int jpeg = count(JPEG_PATTERN, content);
+        if (bilevel == 0 && jpeg == 0) {
+            return IMAGE;
+        }
+        return bilevel >= jpeg ? BILEVEL : JPEG;
+    }
+
+    private static int count(Pattern pattern, String content) {
+        Matcher matcher = pattern.matcher(content);
+        int count = 0;
+        while (matcher.find()) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,168 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs an external command line tool with a time limit. If the tool does not terminate in time, it is killed together with all of its child
+ * processes.
+ */
+public final class ExternalCommand {
+
+    private static final Logger logger = Logger.getLogger(ExternalCommand.class);
+
+    private ExternalCommand() {
+    }
+
+    /**
+     * Execute the given command and wait for it to finish
+     * 
+     * @param command the executable followed by its arguments
+     * @param timeoutSeconds the maximum time to wait for the command. Values <= 0 mean no limit
+     * @return the standard output of the command
+     * @throws IOException if the command could not be started, exited with an error code or did not finish in time
+     * @throws InterruptedException
+     */
+    public static String run(List<String> command, long timeoutSeconds) throws IOException, InterruptedException {
+        return run(command, timeoutSeconds, Set.of(0));
+    }
+
+    /**
+     * Execute the given command and wait for it to finish
+     * 
+     * @param command the executable followed by its arguments
+     * @param timeoutSeconds the maximum time to wait for the command. Values <= 0 mean no limit
+     * @param successCodes the exit codes which indicate a successful execution
+     * @return the standard output of the command
+     * @throws IOException if the command could not be started, exited with an error code or did not finish in time
+     * @throws InterruptedException
+     */
+    public static String run(List<String> command, long timeoutSeconds, Set<Integer> successCodes) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).start();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+        Thread outputReader = startReader(process.getInputStream(), output, "output-" + command.get(0));
+        Thread errorReader = startReader(process.getErrorStream(), errorOutput, "error-" + command.get(0));
+        try {
+            if (timeoutSeconds > 0) {
+                if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                    kill(process.toHandle());
+                    throw new IOException("Command " + command.get(0) + " did not finish within " + timeoutSeconds + " seconds");
+                }
+            } else {
+                process.waitFor();
+            }
+        } catch (InterruptedException e) {
+            kill(process.toHandle());
+            throw e;
+        }
+        outputReader.join(TimeUnit.SECONDS.toMillis(5));
+        errorReader.join(TimeUnit.SECONDS.toMillis(5));
+        if (!successCodes.contains(process.exitValue())) {
+            throw new IOException("Command " + command.get(0) + " exited with code " + process.exitValue() + ": "
+                    + errorOutput.toString(StandardCharsets.UTF_8) + output.toString(StandardCharsets.UTF_8));
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    static Thread startReader(InputStream stream, ByteArrayOutputStream target, String name) {
+        Thread reader = new Thread(() -> {
+            try (InputStream in = stream) {
+                in.transferTo(target);
+            } catch (IOException e) {
+                logger.trace("Stopped reading " + name + ": " + e.toString());
+            }
+        }, name);
+        reader.setDaemon(true);
+        reader.start();
+        return reader;
+    }
+
+    /**
+     * Kill all child processes of this JVM whose command line contains the given string. This is used to stop external tools which were started by
+     * library code that offers no timeout of its own
+     * 
+     * @param commandLinePart a string that identifies the processes to kill, such as a folder which only they write into
+     * @return the number of processes killed
+     */
+    public static int killChildProcesses(String commandLinePart) {
+        List<ProcessHandle> processes = ProcessHandle.current()
+                .descendants()
+                .filter(ph -> ph.info().commandLine().map(line -> line.contains(commandLinePart)).orElse(false))
+                .collect(Collectors.toList());
+        processes.forEach(ExternalCommand::kill);
+        return processes.size();
+    }
+
+    /**
+     * Kill a process and all its descendants. The process is killed first, so a shell cannot start its next command once the current one has been
+     * killed
+     * 
+     * @param handle the process to kill
+     */
+    static void kill(ProcessHandle handle) {
+        String command = handle.info().command().orElse("");
+        List<ProcessHandle> descendants = handle.descendants().collect(Collectors.toList());
+        handle.destroyForcibly();
+        descendants.forEach(ProcessHandle::destroyForcibly);
+        logger.warn("Killed external process " + handle.pid() + " " + command);
+    }
+
+    /**
+     * Get the number of pages of a pdf file using the tool 'pdfinfo' from poppler-utils
+     * 
+     * @param pdfFile the pdf file
+     * @return the number of pages
+     * @throws IOException if pdfinfo is not available or the number of pages could not be determined
+     * @throws InterruptedException
+     */
+    public static int getNumberOfPages(File pdfFile) throws IOException, InterruptedException {
+        String info = run(List.of("pdfinfo", pdfFile.getAbsolutePath()), 60);
+        for (String line : info.split("\\R")) {
+            if (line.startsWith("Pages:")) {
+                try {
+                    return Integer.parseInt(line.substring("Pages:".length()).trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Cannot read number of pages from pdfinfo output: " + line, e);
+                }
+            }
+        }
+        throw new IOException("pdfinfo did not report the number of pages of " + pdfFile);
+    }
+
+}
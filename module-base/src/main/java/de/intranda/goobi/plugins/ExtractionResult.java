@@ -0,0 +1,327 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FilenameUtils;
+
+import ugh.dl.Fileformat;
+
+/**
+ * The result of converting the pdf files of a process. It contains a {@link DocumentResult} for each pdf file with the files written for each
+ * page, their sizes, the number of text characters of each page, the duration of each stage and all degradations. The result is collected while
+ * the files are written, so no further access to the written files is needed to evaluate it.
+ */
+public class ExtractionResult {
+
+    /**
+     * The stages of the extraction of a pdf file
+     */
+    public enum Stage {
+        TEXT("text files"),
+        PAGE_PDF("page pdfs"),
+        IMAGES("images"),
+        ALTO("ALTO files"),
+        METS("METS");
+
+        private final String label;
+
+        private Stage(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final List<DocumentResult> documents = new ArrayList<>();
+    private Fileformat fileformat;
+    private boolean keptFulltext;
+
+    /**
+     * Start the result of a pdf file
+     * 
+     * @param pdfFile the pdf file in the import folder
+     * @param firstPage the counter of the first page of the pdf file
+     * @return the result of the pdf file
+     */
+    public DocumentResult addDocument(File pdfFile, int firstPage) {
+        DocumentResult document = new DocumentResult(pdfFile, firstPage);
+        documents.add(document);
+        return document;
+    }
+
+    public List<DocumentResult> getDocuments() {
+        return Collections.unmodifiableList(documents);
+    }
+
+    /**
+     * @return the fileformat containing the pages and structure elements of all pdf files
+     */
+    public Fileformat getFileformat() {
+        return fileformat;
+    }
+
+    public void setFileformat(Fileformat fileformat) {
+        this.fileformat = fileformat;
+    }
+
+    public int getNumberOfPages() {
+        return documents.stream().mapToInt(DocumentResult::getNumberOfPages).sum();
+    }
+
+    public int getNumberOfFiles(Stage stage) {
+        return documents.stream().mapToInt(document -> document.getNumberOfFiles(stage)).sum();
+    }
+
+    public long getBytes(Stage stage) {
+        return documents.stream().mapToLong(document -> document.getBytes(stage)).sum();
+    }
+
+    /**
+     * @return true if text or ALTO files have been written for any page or have been kept from a previous run
+     */
+    public boolean hasFulltext() {
+        return keptFulltext || getNumberOfFiles(Stage.TEXT) > 0 || getNumberOfFiles(Stage.ALTO) > 0;
+    }
+
+    /**
+     * @return true if a text or ALTO folder which this run did not clear already contained files
+     */
+    public boolean isKeptFulltext() {
+        return keptFulltext;
+    }
+
+    public void setKeptFulltext(boolean keptFulltext) {
+        this.keptFulltext = keptFulltext;
+    }
+
+    /**
+     * @return the degradations of all pdf files
+     */
+    public List<String> getDegradations() {
+        return documents.stream().flatMap(document -> document.getDegradations().stream()).collect(Collectors.toList());
+    }
+
+    /**
+     * @return a short description of the written files for the process journal
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder("Added ").append(documents.size()).append(" pdf files with ").append(getNumberOfPages());
+        summary.append(" pages to process");
+        List<String> stages = new ArrayList<>();
+        for (Stage stage : Stage.values()) {
+            if (stage != Stage.METS && getNumberOfFiles(stage) > 0) {
+                stages.add(getNumberOfFiles(stage) + " " + stage.getLabel());
+            }
+        }
+        if (!stages.isEmpty()) {
+            summary.append(": ").append(String.join(", ", stages));
+        }
+        int degradations = getDegradations().size();
+        if (degradations > 0) {
+            summary.append(". ").append(degradations).append(" degradations occurred");
+        }
+        return summary.toString();
+    }
+
+    /**
+     * The result of a single pdf file
+     */
+    public static class DocumentResult {
+
+        private final File pdfFile;
+        private final int firstPage;
+        private final Map<String, PageResult> pages = new TreeMap<>();
+        private final Map<Stage, Integer> files = new EnumMap<>(Stage.class);
+        private final Map<Stage, Long> bytes = new EnumMap<>(Stage.class);
+        private final Map<Stage, Long> durations = new EnumMap<>(Stage.class);
+        private final List<String> degradations = new ArrayList<>();
+        private final List<DegradedPage> degradedPages = new ArrayList<>();
+        private int numberOfPages = 0;
+
+        private DocumentResult(File pdfFile, int firstPage) {
+            this.pdfFile = pdfFile;
+            this.firstPage = firstPage;
+        }
+
+        /**
+         * Record a file written for a page. The page is identified by the base name of the file
+         * 
+         * @param stage the stage which wrote the file
+         * @param file the file at its destination
+         * @param size the size of the file in bytes
+         */
+        public synchronized void addFile(Stage stage, File file, long size) {
+            getPage(FilenameUtils.getBaseName(file.getName())).addFile(stage, file, size);
+            files.merge(stage, 1, Integer::sum);
+            bytes.merge(stage, size, Long::sum);
+        }
+
+        /**
+         * @param textFile the text file of a page
+         * @param characters the number of characters other than whitespace in the text file
+         */
+        public synchronized void setTextCharacters(File textFile, int characters) {
+            getPage(FilenameUtils.getBaseName(textFile.getName())).textCharacters = characters;
+        }
+
+        public synchronized void addDuration(Stage stage, long millis) {
+            durations.merge(stage, millis, Long::sum);
+        }
+
+        /**
+         * @param stage the stage which was degraded
+         * @param message a description of the degradation, e.g. the reason why no files could be written
+         */
+        public synchronized void addDegradation(Stage stage, String message) {
+            degradations.add(stage.getLabel() + ": " + message);
+        }
+
+        public synchronized void addDegradedPages(List<DegradedPage> pages) {
+            degradedPages.addAll(pages);
+            pages.forEach(page -> degradations.add(page.toString()));
+        }
+
+        public void setNumberOfPages(int numberOfPages) {
+            this.numberOfPages = numberOfPages;
+        }
+
+        public File getPdfFile() {
+            return pdfFile;
+        }
+
+        public int getFirstPage() {
+            return firstPage;
+        }
+
+        public int getNumberOfPages() {
+            return numberOfPages;
+        }
+
+        /**
+         * @return the results of all pages for which files have been written, in page order
+         */
+        public synchronized List<PageResult> getPages() {
+            return new ArrayList<>(pages.values());
+        }
+
+        /**
+         * @return the base names of all pages for which text has been extracted
+         */
+        public synchronized Set<String> getPagesWithText() {
+            return pages.values().stream().filter(PageResult::hasText).map(PageResult::getName).collect(Collectors.toSet());
+        }
+
+        public synchronized int getNumberOfFiles(Stage stage) {
+            return files.getOrDefault(stage, 0);
+        }
+
+        public synchronized long getBytes(Stage stage) {
+            return bytes.getOrDefault(stage, 0L);
+        }
+
+        /**
+         * @return the duration of the stage in milliseconds or 0 if the stage was not run
+         */
+        public synchronized long getDuration(Stage stage) {
+            return durations.getOrDefault(stage, 0L);
+        }
+
+        public synchronized List<String> getDegradations() {
+            return new ArrayList<>(degradations);
+        }
+
+        public synchronized List<DegradedPage> getDegradedPages() {
+            return new ArrayList<>(degradedPages);
+        }
+
+        private PageResult getPage(String name) {
+            return pages.computeIfAbsent(name, PageResult::new);
+        }
+    }
+
+    /**
+     * The files written for a single page
+     */
+    public static class PageResult {
+
+        private final String name;
+        private final Map<Stage, File> files = new EnumMap<>(Stage.class);
+        private final Map<Stage, Long> bytes = new EnumMap<>(Stage.class);
+        private int textCharacters = -1;
+
+        private PageResult(String name) {
+            this.name = name;
+        }
+
+        private void addFile(Stage stage, File file, long size) {
+            files.put(stage, file);
+            bytes.put(stage, size);
+        }
+
+        /**
+         * @return the base name of the files of the page
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @param stage
+         * @return the file written by the stage for this page or null
+         */
+        public File getFile(Stage stage) {
+            return files.get(stage);
+        }
+
+        public long getBytes(Stage stage) {
+            return bytes.getOrDefault(stage, 0L);
+        }
+
+        /**
+         * @return the number of characters other than whitespace in the text file of the page or -1 if no text file has been written
+         */
+        public int getTextCharacters() {
+            return textCharacters;
+        }
+
+        public boolean hasText() {
+            return textCharacters > 0;
+        }
+    }
+}
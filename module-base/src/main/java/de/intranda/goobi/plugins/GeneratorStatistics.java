@@ -0,0 +1,244 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Records the throughput of the image generators per kind of document in a small properties file and chooses the generator for the next document
+ * from it. The statistics are kept separately for each resolution and for each mode in which the images are created, since both change the
+ * throughput considerably. Each generator is first tried a few times for each kind of document. Afterwards the historically fastest generator is
+ * chosen, except for occasional exploration runs with another generator, which keep the statistics up to date. The throughput is kept as
+ * exponential moving average, so recent runs weigh more than old ones. The file is locked while it is read or updated, so several plugin instances
+ * can share it.
+ */
+public class GeneratorStatistics {
+
+    private static final Logger logger = Logger.getLogger(GeneratorStatistics.class);
+
+    /** the images are streamed from the generator by {@link StreamingImageWriter} */
+    public static final String STREAMING = "streaming";
+    /** the images are created in chunks of pages by {@link SupervisedImageWriter} */
+    public static final String SUPERVISED = "supervised";
+    /** the images are created by the pdf converter through temporary files */
+    public static final String TEMP_FILE = "tempfile";
+
+    /** weight of the newest run in the moving average */
+    private static final double SMOOTHING = 0.25;
+
+    /** serializes the access of threads within this JVM, which cannot share file locks */
+    private static final Object LOCK = new Object();
+
+    private final Path file;
+    private final int minRuns;
+    private final double explorationRate;
+    private final Random random;
+
+    /**
+     * @param file the properties file to store the statistics in. It is created if it does not exist
+     * @param minRuns the number of runs of each generator for a kind of document before the statistics are used
+     * @param explorationRate the probability of choosing another than the fastest generator
+     * @param random the source of the exploration decisions
+     */
+    public GeneratorStatistics(Path file, int minRuns, double explorationRate, Random random) {
+        this.file = file;
+        this.minRuns = Math.max(1, minRuns);
+        this.explorationRate = explorationRate;
+        this.random = random;
+    }
+
+    /**
+     * Choose the generator for a document
+     * 
+     * @param feature the kind of the document as determined by {@link DocumentFeatures}
+     * @param resolution the resolution of the images in dpi
+     * @param generators the generators to choose from
+     * @param modes the mode in which the images would be created with the given generator, one of {@link #STREAMING}, {@link #SUPERVISED} and
+     *            {@link #TEMP_FILE}
+     * @return the chosen generator
+     * @throws IOException if the statistics cannot be read
+     */
+    public String choose(String feature, int resolution, List<String> generators, UnaryOperator<String> modes) throws IOException {
+        Properties statistics = read();
+        String leastTried = null;
+        int leastRuns = Integer.MAX_VALUE;
+        for (String generator : generators) {
+            int runs = getRuns(statistics, getKey(feature, resolution, modes.apply(generator), generator));
+            if (runs < leastRuns) {
+                leastRuns = runs;
+                leastTried = generator;
+            }
+        }
+        if (leastRuns < minRuns) {
+            return leastTried;
+        }
+        String fastest = generators.get(0);
+        double fastestPagesPerSecond = getPagesPerSecond(statistics, getKey(feature, resolution, modes.apply(fastest), fastest));
+        for (String generator : generators) {
+            double pagesPerSecond = getPagesPerSecond(statistics, getKey(feature, resolution, modes.apply(generator), generator));
+            if (pagesPerSecond > fastestPagesPerSecond) {
+                fastest = generator;
+                fastestPagesPerSecond = pagesPerSecond;
+            }
+        }
+        if (generators.size() > 1 && random.nextDouble() < explorationRate) {
+            List<String> others = new ArrayList<>(generators);
+            others.remove(fastest);
+            String explored = others.get(random.nextInt(others.size()));
+            logger.debug("Exploring generator " + explored + " for " + feature + " documents instead of " + fastest);
+            return explored;
+        }
+        return fastest;
+    }
+
+    /**
+     * Add a run of a generator to the statistics
+     * 
+     * @param feature the kind of the document
+     * @param resolution the resolution of the images in dpi
+     * @param mode the mode in which the images were created
+     * @param generator the generator used
+     * @param pages the number of rendered pages
+     * @param millis the time needed to render the pages
+     * @throws IOException if the statistics cannot be written
+     */
+    public void record(String feature, int resolution, String mode, String generator, int pages, long millis) throws IOException {
+        if (pages <= 0 || millis <= 0) {
+            return;
+        }
+        double pagesPerSecond = pages * 1000.0 / millis;
+        String key = getKey(feature, resolution, mode, generator);
+        update(statistics -> {
+            int runs = getRuns(statistics, key);
+            double average = runs == 0 ? pagesPerSecond : (1 - SMOOTHING) * getPagesPerSecond(statistics, key) + SMOOTHING * pagesPerSecond;
+            statistics.setProperty(key + ".runs", Integer.toString(runs + 1));
+            statistics.setProperty(key + ".pagesPerSecond", Double.toString(average));
+        });
+    }
+
+    /**
+     * @return the average number of pages per second of the generator for the kind of document, resolution and mode, 0 if it has not been used
+     *         yet
+     * @throws IOException
+     */
+    public double getPagesPerSecond(String feature, int resolution, String mode, String generator) throws IOException {
+        return getPagesPerSecond(read(), getKey(feature, resolution, mode, generator));
+    }
+
+    /**
+     * @return the number of recorded runs of the generator for the kind of document, resolution and mode
+     * @throws IOException
+     */
+    public int getRuns(String feature, int resolution, String mode, String generator) throws IOException {
+        return getRuns(read(), getKey(feature, resolution, mode, generator));
+    }
+
+    private static double getPagesPerSecond(Properties statistics, String key) {
+        return Double.parseDouble(statistics.getProperty(key + ".pagesPerSecond", "0"));
+    }
+
+    private static int getRuns(Properties statistics, String key) {
+        return Integer.parseInt(statistics.getProperty(key + ".runs", "0"));
+    }
+
+    static String getKey(String feature, int resolution, String mode, String generator) {
+        return feature + "." + resolution + "." + mode + "." + generator;
+    }
+
+    private Properties read() throws IOException {
+        if (!Files.exists(file)) {
+            return new Properties();
+        }
+        Properties[] statistics = new Properties[1];
+        withLockedFile(true, channel -> statistics[0] = load(channel));
+        return statistics[0];
+    }
+
+    private void update(StatisticsUpdate update) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        withLockedFile(false, channel -> {
+            Properties statistics = load(channel);
+            update.apply(statistics);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            statistics.store(out, "pages per second of the image generators per kind of document");
+            channel.truncate(0);
+            ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+            long position = 0;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(false);
+        });
+    }
+
+    private void withLockedFile(boolean readOnly, ChannelAction action) throws IOException {
+        synchronized (LOCK) {
+            try (FileChannel channel = readOnly ? FileChannel.open(file, StandardOpenOption.READ)
+                    : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+                    FileLock lock = channel.lock(0, Long.MAX_VALUE, readOnly)) {
+                action.apply(channel);
+            }
+        }
+    }
+
+    private static Properties load(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // read the complete file
+        }
+        Properties statistics = new Properties();
+        statistics.load(new ByteArrayInputStream(buffer.array(), 0, buffer.position()));
+        return statistics;
+    }
+
+    @FunctionalInterface
+    private interface ChannelAction {
+        void apply(FileChannel channel) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface StatisticsUpdate {
+        void apply(Properties statistics);
+    }
+}
@@ -0,0 +1,122 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.io.IOException;
+import java.nio.file.DirectoryStream.Filter;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.goobi.beans.GoobiProperty;
+import org.goobi.beans.Process;
+import org.goobi.beans.Step;
+import org.goobi.production.enums.LogType;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.Helper;
+import de.sub.goobi.helper.StorageProvider;
+import de.sub.goobi.helper.VariableReplacer;
+import de.sub.goobi.persistence.managers.PropertyManager;
+import ugh.dl.DigitalDocument;
+import ugh.dl.Prefs;
+
+/**
+ * The {@link ExtractionEnvironment} of a Goobi installation, delegating to {@link StorageProvider}, {@link Helper}, {@link PropertyManager} and
+ * {@link ConfigurationHelper}
+ */
+public class GoobiEnvironment implements ExtractionEnvironment {
+
+    public static final GoobiEnvironment INSTANCE = new GoobiEnvironment();
+
+    private GoobiEnvironment() {
+    }
+
+    @Override
+    public List<Path> listFiles(String folder) throws IOException {
+        return StorageProvider.getInstance().listFiles(folder);
+    }
+
+    @Override
+    public List<Path> listFiles(String folder, Filter<Path> filter) throws IOException {
+        return StorageProvider.getInstance().listFiles(folder, filter);
+    }
+
+    @Override
+    public void downloadDirectory(Path source, Path target) throws IOException {
+        StorageProvider.getInstance().downloadDirectory(source, target);
+    }
+
+    @Override
+    public void uploadDirectory(Path source, Path target) throws IOException {
+        StorageProvider.getInstance().uploadDirectory(source, target);
+    }
+
+    @Override
+    public void deleteDir(Path folder) throws IOException {
+        StorageProvider.getInstance().deleteDir(folder);
+    }
+
+    @Override
+    public void deleteFile(Path file) throws IOException {
+        StorageProvider.getInstance().deleteFile(file);
+    }
+
+    @Override
+    public boolean useS3() {
+        return ConfigurationHelper.getInstance().useS3();
+    }
+
+    @Override
+    public String getTemporaryFolder() {
+        return ConfigurationHelper.getInstance().getTemporaryFolder();
+    }
+
+    @Override
+    public String getConfigurationFolder() {
+        return ConfigurationHelper.getInstance().getConfigurationFolder();
+    }
+
+    @Override
+    public VariableReplacer createVariableReplacer(DigitalDocument digitalDocument, Prefs prefs, Process process, Step step) {
+        return new VariableReplacer(digitalDocument, prefs, process, step);
+    }
+
+    @Override
+    public void addMessageToProcessJournal(Integer processId, LogType type, String message) {
+        Helper.addMessageToProcessJournal(processId, type, message);
+    }
+
+    @Override
+    public void addMessageToProcessJournal(Integer processId, LogType type, String message, String userName) {
+        Helper.addMessageToProcessJournal(processId, type, message, userName);
+    }
+
+    @Override
+    public void saveProperty(GoobiProperty property) {
+        PropertyManager.saveProperty(property);
+    }
+}
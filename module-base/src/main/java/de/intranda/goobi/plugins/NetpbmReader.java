@@ -0,0 +1,227 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Hashtable;
+
+/**
+ * Reads a sequence of binary netpbm images from a stream, like the output of pdftoppm or the ghostscript device ppmraw written to stdout. Supported
+ * are bitmaps (P4), 8 bit grayscale (P5) and RGB images (P6) as well as PAM images (P7) with the tuple types BLACKANDWHITE, GRAYSCALE and RGB. The
+ * pixel data are read directly into the raster of the returned images.
+ */
+public class NetpbmReader {
+
+    private final DataInputStream in;
+
+    public NetpbmReader(InputStream in) {
+        this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+    }
+
+    /**
+     * Read the next image
+     * 
+     * @return the image or null at the end of the stream
+     * @throws IOException if the stream is not a supported netpbm image or ends within an image
+     */
+    public BufferedImage read() throws IOException {
+        int first = readSkippingWhitespace();
+        if (first < 0) {
+            return null;
+        }
+        int type = in.read();
+        if (first != 'P' || type < '4' || type > '7') {
+            throw new IOException("Not a binary netpbm image: " + (char) first + (char) type);
+        }
+        if (type == '7') {
+            return readPam();
+        }
+        int width = readNumber();
+        int height = readNumber();
+        int maxValue = type == '4' ? 1 : readNumber();
+        // exactly one whitespace character separates the header from the raster
+        in.read();
+        switch (type) {
+            case '4':
+                return readBitmap(width, height);
+            case '5':
+                return readBytes(width, height, 1, maxValue);
+            default:
+                return readBytes(width, height, 3, maxValue);
+        }
+    }
+
+    private BufferedImage readPam() throws IOException {
+        int width = 0;
+        int height = 0;
+        int depth = 0;
+        int maxValue = 0;
+        String tupleType = "";
+        String line;
+        while (!"ENDHDR".equals(line = readLine())) {
+            if (line == null) {
+                throw new EOFException("Incomplete PAM header");
+            }
+            String[] fields = line.trim().split("\\s+", 2);
+            if (fields.length < 2 || fields[0].startsWith("#")) {
+                continue;
+            }
+            switch (fields[0]) {
+                case "WIDTH":
+                    width = Integer.parseInt(fields[1].trim());
+                    break;
+                case "HEIGHT":
+                    height = Integer.parseInt(fields[1].trim());
+                    break;
+                case "DEPTH":
+                    depth = Integer.parseInt(fields[1].trim());
+                    break;
+                case "MAXVAL":
+                    maxValue = Integer.parseInt(fields[1].trim());
+                    break;
+                case "TUPLTYPE":
+                    tupleType = fields[1].trim();
+                    break;
+                default:
+                    break;
+            }
+        }
+        if ("BLACKANDWHITE".equals(tupleType) && depth == 1 && maxValue == 1) {
+            return readBlackAndWhiteSamples(width, height);
+        }
+        if (("GRAYSCALE".equals(tupleType) && depth == 1) || ("RGB".equals(tupleType) && depth == 3)) {
+            return readBytes(width, height, depth, maxValue);
+        }
+        throw new IOException("Unsupported PAM image with tuple type " + tupleType + " and depth " + depth);
+    }
+
+    /**
+     * Read a P4 raster, in which each row is padded to full bytes and 1 means black
+     */
+    private BufferedImage readBitmap(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        in.readFully(data);
+        // the default palette of TYPE_BYTE_BINARY has black at index 0
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ~data[i];
+        }
+        return image;
+    }
+
+    /**
+     * Read a PAM BLACKANDWHITE raster, in which each pixel has its own byte and 1 means white
+     */
+    private BufferedImage readBlackAndWhiteSamples(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        WritableRaster raster = image.getRaster();
+        byte[] row = new byte[width];
+        int[] samples = new int[width];
+        for (int y = 0; y < height; y++) {
+            in.readFully(row);
+            for (int x = 0; x < width; x++) {
+                samples[x] = row[x];
+            }
+            raster.setSamples(0, y, width, 1, 0, samples);
+        }
+        return image;
+    }
+
+    private BufferedImage readBytes(int width, int height, int bands, int maxValue) throws IOException {
+        if (maxValue != 255) {
+            throw new IOException("Unsupported maximum sample value " + maxValue + ", only 8 bit samples are supported");
+        }
+        if (bands == 1) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            in.readFully(((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+            return image;
+        }
+        byte[] data = new byte[Math.multiplyExact(Math.multiplyExact(width, height), bands)];
+        in.readFully(data);
+        // the samples are in RGB order, so use a color model for them instead of converting them into one of the predefined types
+        WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(data, data.length), width, height, width * bands, bands,
+                new int[] { 0, 1, 2 }, null);
+        ComponentColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false, Transparency.OPAQUE,
+                DataBuffer.TYPE_BYTE);
+        return new BufferedImage(colorModel, raster, false, new Hashtable<>());
+    }
+
+    private int readSkippingWhitespace() throws IOException {
+        int c;
+        do {
+            c = in.read();
+            if (c == '#') {
+                skipComment();
+                c = ' ';
+            }
+        } while (c >= 0 && Character.isWhitespace(c));
+        return c;
+    }
+
+    private int readNumber() throws IOException {
+        int c = readSkippingWhitespace();
+        if (c < '0' || c > '9') {
+            throw new IOException("Invalid netpbm header");
+        }
+        int value = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            in.mark(1);
+            c = in.read();
+        }
+        in.reset();
+        return value;
+    }
+
+    private void skipComment() throws IOException {
+        int c;
+        do {
+            c = in.read();
+        } while (c >= 0 && c != '\n' && c != '\r');
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0 && c != '\n') {
+            line.append((char) c);
+        }
+        return c < 0 && line.length() == 0 ? null : line.toString();
+    }
+}
@@ -0,0 +1,145 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads the outline (bookmarks) of a pdf file with the tool 'qpdf' and resolves the destination of each bookmark to a page number. Destinations
+ * which qpdf does not resolve itself are looked up in an index from page object to page number, which is built once per document. The outline is
+ * returned as a flat list in document order, so arbitrarily deep outlines can be processed without recursion.
+ */
+public class OutlineReader {
+
+    private static final long TIMEOUT_SECONDS = 600;
+
+    private OutlineReader() {
+    }
+
+    /**
+     * Read the outline of a pdf file
+     * 
+     * @param pdfFile the pdf file
+     * @return all outline entries in document order
+     * @throws IOException if qpdf is not available or its output cannot be read
+     * @throws InterruptedException
+     */
+    public static List<OutlineEntry> read(File pdfFile) throws IOException, InterruptedException {
+        String json = ExternalCommand.run(List.of("qpdf", "--json", "--json-key=outlines", "--json-key=pages", pdfFile.getAbsolutePath()),
+                TIMEOUT_SECONDS, Set.of(0, 3));
+        return parse(new ObjectMapper().readTree(json));
+    }
+
+    /**
+     * Convert the json output of 'qpdf --json' into a list of outline entries
+     * 
+     * @param root the root node of the qpdf output
+     * @return all outline entries in document order
+     */
+    static List<OutlineEntry> parse(JsonNode root) {
+        Map<String, Integer> pageIndex = new HashMap<>();
+        JsonNode pages = root.path("pages");
+        for (int i = 0; i < pages.size(); i++) {
+            pageIndex.put(pages.get(i).path("object").asText(), i + 1);
+        }
+
+        List<OutlineEntry> entries = new ArrayList<>();
+        Deque<JsonNode> nodes = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        pushChildren(root.path("outlines"), 0, nodes, depths);
+        while (!nodes.isEmpty()) {
+            JsonNode node = nodes.pop();
+            int depth = depths.pop();
+            entries.add(new OutlineEntry(node.path("title").asText(""), depth, getPageNumber(node, pageIndex)));
+            pushChildren(node.path("kids"), depth + 1, nodes, depths);
+        }
+        return entries;
+    }
+
+    private static void pushChildren(JsonNode children, int depth, Deque<JsonNode> nodes, Deque<Integer> depths) {
+        for (int i = children.size() - 1; i >= 0; i--) {
+            nodes.push(children.get(i));
+            depths.push(depth);
+        }
+    }
+
+    private static int getPageNumber(JsonNode node, Map<String, Integer> pageIndex) {
+        JsonNode position = node.path("destpageposfrom1");
+        if (position.canConvertToInt() && position.asInt() > 0) {
+            return position.asInt();
+        }
+        JsonNode dest = node.path("dest");
+        if (dest.isArray() && dest.size() > 0) {
+            return pageIndex.getOrDefault(dest.get(0).asText(), 0);
+        }
+        return 0;
+    }
+
+    /**
+     * A single bookmark of a pdf outline
+     */
+    public static class OutlineEntry {
+
+        private final String title;
+        private final int depth;
+        private final int pageNumber;
+
+        /**
+         * @param title the title of the bookmark
+         * @param depth the nesting depth, starting with 0 for top level bookmarks
+         * @param pageNumber the page the bookmark points to, starting with 1. 0 if the destination could not be resolved
+         */
+        public OutlineEntry(String title, int depth, int pageNumber) {
+            this.title = title;
+            this.depth = depth;
+            this.pageNumber = pageNumber;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public int getPageNumber() {
+            return pageNumber;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import de.intranda.goobi.plugins.OutlineReader.OutlineEntry;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+import ugh.exceptions.UGHException;
+
+/**
+ * Creates the logical structure for a pdf outline in a single pass over the outline entries. Each entry becomes a structure element of the
+ * configured type, which is linked to all pages from the page the entry points to up to the page before the next entry on the same or a higher
+ * level. The depth of the created structure can be limited. Entries below the maximal depth are either moved up to the deepest allowed level or
+ * dropped, in which case their pages belong to their ancestor.
+ */
+public class OutlineStructureBuilder {
+
+    private static final Logger logger = Logger.getLogger(OutlineStructureBuilder.class);
+
+    private static final String TITLE_METADATA = "TitleDocMain";
+    private static final String LOGICAL_PHYSICAL = "logical_physical";
+
+    private final DigitalDocument document;
+    private final DocStructType docType;
+    private final MetadataType titleType;
+    private final int maxDepth;
+    private final boolean flatten;
+
+    /**
+     * @param document the digital document to add the structure to
+     * @param prefs the ruleset
+     * @param docType the type of the created structure elements
+     * @param maxDepth the maximal depth of the created structure. 0 for no limit
+     * @param flatten if true, entries below the maximal depth are added on the deepest allowed level. Otherwise they are dropped
+     */
+    public OutlineStructureBuilder(DigitalDocument document, Prefs prefs, DocStructType docType, int maxDepth, boolean flatten) {
+        this.document = document;
+        this.docType = docType;
+        this.titleType = prefs.getMetadataTypeByName(TITLE_METADATA);
+        if (!docType.isDocStructTypeAllowedAsChild(docType)) {
+            // structure elements of this type cannot be nested
+            this.maxDepth = 1;
+        } else {
+            this.maxDepth = maxDepth;
+        }
+        this.flatten = flatten;
+    }
+
+    /**
+     * Add the structure elements for the outline to the parent
+     * 
+     * @param parent the structure element to add the top level entries to
+     * @param entries the outline entries in document order
+     * @param pages the physical pages of the pdf file in page order
+     * @return the number of created structure elements
+     * @throws UGHException if a structure element cannot be created
+     */
+    public int build(DocStruct parent, List<OutlineEntry> entries, List<DocStruct> pages) throws UGHException {
+        if (pages.isEmpty()) {
+            return 0;
+        }
+        Deque<OpenElement> openElements = new ArrayDeque<>();
+        int created = 0;
+        int lastStartPage = 1;
+        for (OutlineEntry entry : entries) {
+            int depth = entry.getDepth();
+            if (maxDepth > 0 && depth >= maxDepth) {
+                if (!flatten) {
+                    continue;
+                }
+                depth = maxDepth - 1;
+            }
+            int startPage = entry.getPageNumber() > 0 ? Math.min(entry.getPageNumber(), pages.size()) : lastStartPage;
+            while (openElements.size() > depth) {
+                close(openElements.pop(), startPage - 1, pages);
+            }
+            DocStruct element = document.createDocStruct(docType);
+            addTitle(element, entry.getTitle());
+            DocStruct elementParent = openElements.isEmpty() ? parent : openElements.peek().element;
+            elementParent.addChild(element);
+            openElements.push(new OpenElement(element, startPage));
+            lastStartPage = startPage;
+            created++;
+        }
+        while (!openElements.isEmpty()) {
+            close(openElements.pop(), pages.size(), pages);
+        }
+        return created;
+    }
+
+    private void addTitle(DocStruct element, String title) {
+        if (titleType == null || StringUtils.isBlank(title)) {
+            return;
+        }
+        try {
+            Metadata metadata = new Metadata(titleType);
+            metadata.setValue(title.trim());
+            element.addMetadata(metadata);
+        } catch (UGHException e) {
+            logger.debug("Cannot add title to structure element of type " + docType.getName() + ": " + e.toString());
+        }
+    }
+
+    private static void close(OpenElement openElement, int endPage, List<DocStruct> pages) {
+        int lastPage = Math.max(openElement.startPage, endPage);
+        for (int page = openElement.startPage; page <= lastPage; page++) {
+            openElement.element.addReferenceTo(pages.get(page - 1), LOGICAL_PHYSICAL);
+        }
+    }
+
+    private static class OpenElement {
+
+        private final DocStruct element;
+        private final int startPage;
+
+        private OpenElement(DocStruct element, int startPage) {
+            this.element = element;
+            this.startPage = startPage;
+        }
+    }
+}
@@ -32,13 +32,23 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.sql.Date;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.ObjIntConsumer;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 import org.apache.commons.configuration.Configuration;
@@ -72,15 +82,12 @@ import de.intranda.digiverso.pdf.exception.PDFReadException;
 import de.intranda.digiverso.pdf.exception.PDFWriteException;
 import de.intranda.goobi.exceptions.PluginConfigurationException;
 import de.sub.goobi.config.ConfigPlugins;
-import de.sub.goobi.config.ConfigurationHelper;
-import de.sub.goobi.helper.Helper;
 import de.sub.goobi.helper.NIOFileUtils;
-import de.sub.goobi.helper.StorageProvider;
 import de.sub.goobi.helper.VariableReplacer;
 import de.sub.goobi.helper.exceptions.DAOException;
 import de.sub.goobi.helper.exceptions.SwapException;
-import de.sub.goobi.persistence.managers.PropertyManager;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
+import ugh.dl.DigitalDocument;
 import ugh.dl.DocStruct;
 import ugh.dl.DocStructType;
 import ugh.dl.FileSet;
@@ -97,14 +104,17 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
 
     private static final Logger logger = Logger.getLogger(PDFExtractionPlugin.class);
     private static final String DEFAULT_ENCODING = "utf-8";
+    private static final String CONSECUTIVE_COUNT_FORMAT = "%08d";
 
     private Path tifFolder = null;
     private Path importFolder = null;
     private Path pdfFolder = null;
     private Path textFolder = null;
     private Path altoFolder = null;
+    private Path checksumFolder = null;
 
-    private Configuration config;
+    private ExtractionEnvironment environment = GoobiEnvironment.INSTANCE;
+    private PluginConfiguration config;
     private FilesReverter reverter = new FilesReverter();
 
     private Step step;
@@ -113,6 +123,17 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
     private boolean useS3 = false;
 
     private Path tempFolder = null;
+    // folders within the temporary folder and the destination folders they are uploaded to
+    private final Map<Path, Path> uploadFolders = new LinkedHashMap<>();
+
+    private AsyncPageWriter pageWriter = null;
+    private Path stagingFolder = null;
+    private Map<Path, ChecksumManifest> checksumManifests = null;
+    private final Map<ExtractionResult.DocumentResult, Map<ExtractionResult.Stage, IOException>> pageWriteErrors = new LinkedHashMap<>();
+    private Map<String, String> childDocTypes = new HashMap<>();
+    private final List<PageCompletionListener> pageListeners = new CopyOnWriteArrayList<>();
+    private PageSpoolFile pageSpoolFile = null;
+    private GeneratorStatistics generatorStatistics = null;
 
     @Override
     public PluginType getType() {
@@ -130,6 +151,28 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
         this.returnPath = returnPath;
     }
 
+    /**
+     * Replace the services of the Goobi application used by this plugin. Used to run the plugin outside of a Goobi installation
+     * 
+     * @param environment
+     */
+    void setEnvironment(ExtractionEnvironment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Register a listener which is informed about each page file as soon as it has been written
+     * 
+     * @param listener
+     */
+    public void addPageCompletionListener(PageCompletionListener listener) {
+        pageListeners.add(listener);
+    }
+
+    public void removePageCompletionListener(PageCompletionListener listener) {
+        pageListeners.remove(listener);
+    }
+
     /**
      * Execute the plugin. This method is the entrypoint called by Goobi.
      */
@@ -138,126 +181,128 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
 
         Process process = step.getProzess();
         try {
-            this.config = getConfig(process.getProjekt().getTitel(), step.getTitel());
+            String projectName = process.getProjekt().getTitel();
+            String stepName = step.getTitel();
+            this.config = PluginConfiguration.getInstance(projectName, stepName, getConfigFile(), () -> getConfig(projectName, stepName));
             try {
                 Fileformat origFileformat = process.readMetadataFile();
                 Prefs prefs = process.getRegelsatz().getPreferences();
-                VariableReplacer vr = new VariableReplacer(origFileformat.getDigitalDocument(), prefs, process, step);
-                Path sourceFolder = Path.of(getConfigValue("sourceFolder", "{origpath}", vr));
-                List<File> pdfFiles = StorageProvider.getInstance()
+                VariableReplacer vr = environment.createVariableReplacer(origFileformat.getDigitalDocument(), prefs, process, step);
+                Path sourceFolder = Path.of(replaceVariables(config.getSourceFolder(), vr));
+                List<File> pdfFiles = environment
                         .listFiles(sourceFolder.toString(), (path) -> path.toString().matches(".*.(pdf|PDF)"))
                         .stream()
                         .map(Path::toFile)
                         .collect(Collectors.toList());
 
                 if (pdfFiles.size() > 0) {
-                    if (ConfigurationHelper.getInstance().useS3()) {
-                        useS3 = true;
-                        // create temp folder
-                        tempFolder = Paths.get(ConfigurationHelper.getInstance().getTemporaryFolder(), "" + process.getId());
-                        if (!Files.exists(tempFolder)) {
-                            Files.createDirectories(tempFolder);
-                        }
-                        // download files
-                        StorageProvider.getInstance().downloadDirectory(sourceFolder, tempFolder);
-                        // set temp folder as import folder
-                        pdfFiles = StorageProvider.getInstance()
-                                .listFiles(tempFolder.toString(), (path) -> path.toString().matches(".*\\.(pdf|PDF)"))
-                                .stream()
-                                .map(Path::toFile)
-                                .collect(Collectors.toList());
-                    }
-                    Fileformat ff = convertData(pdfFiles, origFileformat, prefs, vr, config.getBoolean("overwriteExistingData", true));
-                    if (ff != null) {
-                        try {
-                            if (shouldWriteMetsFile()) {
-                                backupMetadata(process);
-                                ff.write(process.getMetadataFilePath());
+                    openPageSpoolFile(vr);
+                    try {
+                        if (environment.useS3()) {
+                            useS3 = true;
+                            // create temp folder
+                            tempFolder = Paths.get(environment.getTemporaryFolder(), "" + process.getId());
+                            if (!Files.exists(tempFolder)) {
+                                Files.createDirectories(tempFolder);
                             }
-                            createProcessProperties();
-                            Helper.addMessageToProcessJournal(process.getId(), LogType.INFO, "Added " + pdfFiles.size() + " pdf files to process");
-
-                            if (useS3) {
-                                // upload files, cleanup temp folder
-                                StorageProvider.getInstance()
-                                        .uploadDirectory(tifFolder, Path.of(getConfigValue("images.destination", "{origpath}", vr)));
-                                StorageProvider.getInstance()
-                                        .uploadDirectory(this.importFolder, Path.of(getConfigValue("targetFolder", "{importpath}", vr)));
-                                StorageProvider.getInstance()
-                                        .uploadDirectory(pdfFolder,
-                                                Path.of(getConfigValue("pagePdfs.destination", "{processpath}/ocr/{processtitle}_pdf", vr)));
-                                StorageProvider.getInstance()
-                                        .uploadDirectory(textFolder,
-                                                Path.of(getConfigValue("plaintext.destination", "{processpath}/ocr/{processtitle}_txt", vr)));
-                                StorageProvider.getInstance()
-                                        .uploadDirectory(altoFolder,
-                                                Path.of(getConfigValue("alto.destination", "{processpath}/ocr/{processtitle}_alto", vr)));
-                                StorageProvider.getInstance().deleteDir(tempFolder);
-                                // remove original pdf files
-                                pdfFiles = StorageProvider.getInstance()
-                                        .listFiles(sourceFolder.toString(), (path) -> path.toString().matches(".*.(pdf|PDF)"))
-                                        .stream()
-                                        .map(Path::toFile)
-                                        .collect(Collectors.toList());
-                                for (File pdf : pdfFiles) {
-                                    StorageProvider.getInstance().deleteFile(pdf.toPath());
+                            // download files
+                            environment.downloadDirectory(sourceFolder, tempFolder);
+                            // set temp folder as import folder
+                            pdfFiles = environment
+                                    .listFiles(tempFolder.toString(), (path) -> path.toString().matches(".*\\.(pdf|PDF)"))
+                                    .stream()
+                                    .map(Path::toFile)
+                                    .collect(Collectors.toList());
+                        }
+                        ExtractionResult result = convertData(pdfFiles, origFileformat, prefs, vr, config.isOverwriteExistingData());
+                        if (result != null && result.getFileformat() != null) {
+                            try {
+                                if (shouldWriteMetsFile()) {
+                                    backupMetadata(process);
+                                    result.getFileformat().write(process.getMetadataFilePath());
+                                }
+                                createProcessProperties(result);
+                                environment.addMessageToProcessJournal(process.getId(), LogType.INFO, result.getSummary());
+
+                                if (useS3) {
+                                    // upload files, cleanup temp folder
+                                    for (Map.Entry<Path, Path> folder : uploadFolders.entrySet()) {
+                                        environment.uploadDirectory(folder.getKey(), folder.getValue());
+                                    }
+                                    environment.deleteDir(tempFolder);
+                                    // remove original pdf files
+                                    pdfFiles = environment
+                                            .listFiles(sourceFolder.toString(), (path) -> path.toString().matches(".*.(pdf|PDF)"))
+                                            .stream()
+                                            .map(Path::toFile)
+                                            .collect(Collectors.toList());
+                                    for (File pdf : pdfFiles) {
+                                        environment.deleteFile(pdf.toPath());
+                                    }
                                 }
+                                // the files are only complete in their destination folders now
+                                fireExtractionFinished(result.getNumberOfPages());
+                                return true;
+                            } catch (IOException | InterruptedException | SwapException | DAOException | WriteException | PreferencesException e) {
+                                logger.error("Error writing new metadata file: " + e.toString());
+                                fireExtractionFailed(e);
                             }
-                            return true;
-                        } catch (IOException | InterruptedException | SwapException | DAOException | WriteException | PreferencesException e) {
-                            logger.error("Error writing new metadata file: " + e.toString());
+                        } else {
+                            throw new IOException("Failed to extract pdf files");
                         }
-                    } else {
-                        throw new IOException("Failed to extract pdf files");
+                    } catch (Throwable e) {
+                        fireExtractionFailed(e);
+                        throw e;
+                    } finally {
+                        closePageSpoolFile();
                     }
-                } else if (config.getBoolean("validation.failOnMissingPDF", true)) {
+                } else if (config.isFailOnMissingPdf()) {
                     logger.error("No PDF files found in " + sourceFolder);
-                    Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR,
+                    environment.addMessageToProcessJournal(process.getId(), LogType.ERROR,
                             "Failed to perform PDF-extraction: No pdf files found in " + sourceFolder);
 
                 } else {
                     logger.debug("No PDF files found in " + sourceFolder);
-                    Helper.addMessageToProcessJournal(process.getId(), LogType.DEBUG,
+                    environment.addMessageToProcessJournal(process.getId(), LogType.DEBUG,
                             "No PDF files found in " + sourceFolder + ". Continue workflow without PDF conversion");
                     return true;
                 }
             } catch (IllegalArgumentException e) {
                 logger.error("Illegal image format for image creation");
-                Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Illegal image format for image creation");
+                environment.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Illegal image format for image creation");
                 reverter.revert(true);
             } catch (UGHException e) {
                 logger.error("Error creating metadata", e);
-                Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Error adding pdf to process:\n" + e.toString());
+                environment.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Error adding pdf to process:\n" + e.toString());
                 reverter.revert(true);
             } catch (PDFWriteException e) {
                 logger.error("Error creating single page pdf files", e);
-                Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Error creating single page pdf files:\n" + e.toString());
+                environment.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Error creating single page pdf files:\n" + e.toString());
                 reverter.revert(true);
             } catch (PDFReadException e) {
                 logger.error("Error creating files", e);
-                Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Error creating files:\n" + e.toString());
+                environment.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Error creating files:\n" + e.toString());
                 reverter.revert(true);
             } catch (DAOException | IOException | InterruptedException | SwapException e) {
                 logger.error("Error getting process directory paths", e);
-                Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Error adding pdf to process:\n" + e.toString());
+                environment.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Error adding pdf to process:\n" + e.toString());
                 reverter.revert(true);
             } catch (Throwable e) {
                 logger.error("Unexpected error", e);
-                Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Error adding pdf to process:\n" + e.toString());
+                environment.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Error adding pdf to process:\n" + e.toString());
                 reverter.revert(true);
             }
         } catch (ReversionException e) {
             logger.error("Error reverting process after exception", e);
-            Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Error reverting process after exception:\n" + e.toString());
+            environment.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Error reverting process after exception:\n" + e.toString());
         } catch (PluginConfigurationException e) {
             logger.error(e.getMessage(), e);
-            Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, e.toString());
+            environment.addMessageToProcessJournal(process.getId(), LogType.ERROR, e.toString());
         }
         return false;
     }
 
-    private String getConfigValue(String key, String defaultValue, VariableReplacer vr) {
-        String configuredValue = this.config.getString(key, defaultValue);
+    private String replaceVariables(String configuredValue, VariableReplacer vr) {
         if (vr != null) {
             return vr.replace(configuredValue);
         } else {
@@ -268,21 +313,14 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
     /**
      * Write configured process properties
      * 
-     * @throws PDFReadException
+     * @param result the result of the extraction
      */
-    private void createProcessProperties() throws PDFReadException {
-        String propertyName = this.config.getString("properties.fulltext.name", "");
+    private void createProcessProperties(ExtractionResult result) {
+        String propertyName = this.config.getFulltextPropertyName();
         if (StringUtils.isNotBlank(propertyName)) {
-            String trueValue = this.config.getString("properties.fulltext.value[@exists='true']", "TRUE");
-            String falseValue = this.config.getString("properties.fulltext.value[@exists='false']", "FALSE");
-
-            boolean hasFulltext = false;
-            if (this.altoFolder != null && Files.exists(this.altoFolder) && StorageProvider.getInstance().getNumberOfFiles(altoFolder) > 0) {
-                hasFulltext = true;
-            } else if (this.textFolder != null && Files.exists(this.textFolder) && StorageProvider.getInstance().getNumberOfFiles(textFolder) > 0) {
-                hasFulltext = true;
-            }
-            setProperty(propertyName, hasFulltext ? trueValue : falseValue);
+            String trueValue = this.config.getFulltextPropertyTrueValue();
+            String falseValue = this.config.getFulltextPropertyFalseValue();
+            setProperty(propertyName, result.hasFulltext() ? trueValue : falseValue);
         }
     }
 
@@ -298,16 +336,7 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
             properties.add(property);
         }
         property.setWert(value);
-        PropertyManager.saveProperty(property);
-    }
-
-    private boolean getFulltext(List<File> pdfFiles) throws PDFReadException {
-        for (File file : pdfFiles) {
-            if (StringUtils.isNotBlank(PDFConverter.getFulltext(file))) {
-                return true;
-            }
-        }
-        return false;
+        environment.saveProperty(property);
     }
 
     /**
@@ -370,7 +399,7 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
      * 
      * @param importFiles
      * @param process
-     * @return
+     * @return the result of the conversion, containing the fileformat with the new pages and structure elements
      * @throws IOException
      * @throws InterruptedException
      * @throws SwapException
@@ -379,27 +408,34 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
      * @throws PDFWriteException
      * @throws UGHException
      */
-    public Fileformat convertData(List<File> importFiles, Fileformat origFileformat, Prefs prefs, VariableReplacer vr, boolean overwriteOldData)
+    public ExtractionResult convertData(List<File> importFiles, Fileformat origFileformat, Prefs prefs, VariableReplacer vr, boolean overwriteOldData)
             throws IOException, InterruptedException, SwapException, DAOException, PDFReadException, PDFWriteException, UGHException {
 
         preparePDFConverter();
 
-        tifFolder = Path.of(getConfigValue("images.destination", "{origpath}", vr));
-        importFolder = Path.of(getConfigValue("targetFolder", "{importpath}", vr));
-        pdfFolder = Path.of(getConfigValue("pagePdfs.destination", "{processpath}/ocr/{processtitle}_pdf", vr));
-        textFolder = Path.of(getConfigValue("plaintext.destination", "{processpath}/ocr/{processtitle}_txt", vr));
-        altoFolder = Path.of(getConfigValue("alto.destination", "{processpath}/ocr/{processtitle}_alto", vr));
+        tifFolder = Path.of(replaceVariables(config.getImagesDestination(), vr));
+        importFolder = Path.of(replaceVariables(config.getTargetFolder(), vr));
+        pdfFolder = Path.of(replaceVariables(config.getSinglePagePdfDestination(), vr));
+        textFolder = Path.of(replaceVariables(config.getPlainTextDestination(), vr));
+        altoFolder = Path.of(replaceVariables(config.getAltoDestination(), vr));
+        checksumFolder = Path.of(replaceVariables(config.getChecksumsDestination(), vr));
 
+        uploadFolders.clear();
         if (useS3) {
-            tifFolder = Paths.get(tempFolder.toString(), tifFolder.getFileName().toString());
-            importFolder = Paths.get(tempFolder.toString(), importFolder.getFileName().toString());
-            pdfFolder = Paths.get(tempFolder.toString(), pdfFolder.getFileName().toString());
-            textFolder = Paths.get(tempFolder.toString(), textFolder.getFileName().toString());
-            altoFolder = Paths.get(tempFolder.toString(), altoFolder.getFileName().toString());
-        } else {
-
+            tifFolder = getUploadFolder(tifFolder);
+            importFolder = getUploadFolder(importFolder);
+            pdfFolder = getUploadFolder(pdfFolder);
+            textFolder = getUploadFolder(textFolder);
+            altoFolder = getUploadFolder(altoFolder);
+            if (shouldWriteChecksums()) {
+                checksumFolder = getUploadFolder(checksumFolder);
+            }
         }
 
+        // only folders which this run does not clear can still contain fulltext of a previous run
+        boolean keptFulltext = (!overwriteOldData || !shouldWritePlainText()) && containsFiles(textFolder)
+                || (!overwriteOldData || !shouldWriteAltoFiles()) && containsFiles(altoFolder);
+
         Files.createDirectories(importFolder);
         if (shouldWriteImageFiles()) {
             if (overwriteOldData) {
@@ -437,33 +473,283 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
         }
 
         MutableInt counter = new MutableInt(numExistingPages + 1);
-        String pdfDocType = config.getString("mets.docType.parent", config.getString("docType.parent", ""));
-        String childDocType = config.getString("mets.docType.children", config.getString("docType.children", ""));
-        for (File file : importFiles) {
-            if (StringUtils.isNotBlank(pdfDocType) && shouldWriteMetsFile()) {
-                DocStruct ds = addDocStruct(topStruct, ff, prefs, pdfDocType, file);
-                ff = convertPdf(file, ff, prefs, ds, childDocType, counter);
-            } else {
-                ff = convertPdf(file, ff, prefs, null, childDocType, counter);
+        String pdfDocType = config.getDocTypeParent();
+        String childDocType = config.getDocTypeChildren();
+        childDocTypes.clear();
+        checksumManifests = shouldWriteChecksums() ? new HashMap<>() : null;
+        ExtractionResult result = new ExtractionResult();
+        result.setKeptFulltext(keptFulltext);
+        openPageWriter();
+        try {
+            for (File file : importFiles) {
+                if (StringUtils.isNotBlank(pdfDocType) && shouldWriteMetsFile()) {
+                    DocStruct ds = addDocStruct(topStruct, ff, prefs, pdfDocType, file);
+                    ff = convertPdf(file, ff, prefs, ds, childDocType, counter, result);
+                } else {
+                    ff = convertPdf(file, ff, prefs, null, childDocType, counter, result);
+                }
             }
+            if (pageWriter != null) {
+                pageWriter.awaitCompletion();
+                logger.debug(pageWriter.getLatencyReport());
+                handlePageWriteErrors();
+            }
+            writeChecksumManifests();
+        } finally {
+            closePageWriter();
         }
         logger.debug("A total of " + (counter.intValue() - 1) + " pages have so far been converted");
-        return ff;
+        result.setFileformat(ff);
+        return result;
 
     }
 
+    /**
+     * If configured, create a writer which moves text and alto files from a local staging folder to their destination in the background
+     * 
+     * @throws IOException
+     */
+    private void openPageWriter() throws IOException {
+        if (config.isUseOutputWriter()) {
+            stagingFolder = Files.createTempDirectory(getTempFolder().toPath(), "pdf_extraction_");
+            pageWriter = new AsyncPageWriter(config.getOutputWriterThreads(), config.getOutputWriterSyncBatchSize());
+            synchronized (pageWriteErrors) {
+                pageWriteErrors.clear();
+            }
+        }
+    }
+
+    /**
+     * Handle the files which the page writer could not move to their destination like errors of the synchronous extraction: Either fail the step or
+     * remove the files of the stage for the pdf file and record a degradation, depending on the failOnError setting of the stage
+     * 
+     * @throws IOException if the step is to fail
+     */
+    private void handlePageWriteErrors() throws IOException {
+        Map<ExtractionResult.DocumentResult, Map<ExtractionResult.Stage, IOException>> errors;
+        synchronized (pageWriteErrors) {
+            errors = new LinkedHashMap<>(pageWriteErrors);
+            pageWriteErrors.clear();
+        }
+        for (Map.Entry<ExtractionResult.DocumentResult, Map<ExtractionResult.Stage, IOException>> documentErrors : errors.entrySet()) {
+            ExtractionResult.DocumentResult document = documentErrors.getKey();
+            for (Map.Entry<ExtractionResult.Stage, IOException> error : documentErrors.getValue().entrySet()) {
+                ExtractionResult.Stage stage = error.getKey();
+                String message = "Failed writing {1} from pdf {2}: {3}".replace("{1}", stage.getLabel())
+                        .replace("{2}", document.getPdfFile().toString())
+                        .replace("{3}", error.getValue().toString());
+                logger.warn(message);
+                if (shouldFailOnError(stage)) {
+                    throw error.getValue();
+                }
+                writeLogEntry(LogType.WARN, message);
+                document.addDegradation(stage, error.getValue().toString());
+                List<File> files =
+                        document.getPages().stream().map(page -> page.getFile(stage)).filter(Objects::nonNull).collect(Collectors.toList());
+                deleteFilesAndFolder(files);
+            }
+        }
+    }
+
+    private void closePageWriter() {
+        if (pageWriter != null) {
+            pageWriter.close();
+            pageWriter = null;
+        }
+        if (stagingFolder != null) {
+            FileUtils.deleteQuietly(stagingFolder.toFile());
+            stagingFolder = null;
+        }
+    }
+
+    /**
+     * If configured, open the spool file to which the written page files are appended
+     * 
+     * @param vr
+     * @throws IOException
+     */
+    private void openPageSpoolFile(VariableReplacer vr) throws IOException {
+        if (StringUtils.isNotBlank(config.getPageSpoolFile())) {
+            pageSpoolFile = new PageSpoolFile(Path.of(replaceVariables(config.getPageSpoolFile(), vr)));
+            pageListeners.add(pageSpoolFile);
+        }
+    }
+
+    private void closePageSpoolFile() {
+        if (pageSpoolFile != null) {
+            pageListeners.remove(pageSpoolFile);
+            try {
+                pageSpoolFile.close();
+            } catch (IOException e) {
+                logger.warn("Cannot close page spool file " + pageSpoolFile.getFile() + ": " + e.toString());
+            }
+            pageSpoolFile = null;
+        }
+    }
+
+    /**
+     * Inform the page listeners about files of a stage which have been written to their destination
+     * 
+     * @param document the pdf file the files were extracted from
+     * @param stage the stage which wrote the files
+     * @param files the files in page order, starting with the first page of the pdf file
+     */
+    private void firePagesCompleted(ExtractionResult.DocumentResult document, ExtractionResult.Stage stage, List<File> files) {
+        for (int i = 0; i < files.size(); i++) {
+            firePageCompleted(document, stage, files.get(i), i);
+        }
+    }
+
+    private void firePageCompleted(ExtractionResult.DocumentResult document, ExtractionResult.Stage stage, File file, int index) {
+        if (pageListeners.isEmpty()) {
+            return;
+        }
+        PageCompletedEvent event = new PageCompletedEvent(getProcessId(), getDestinationFile(document.getPdfFile()), stage,
+                getPage(document, file, index), getDestinationFile(file));
+        for (PageCompletionListener listener : pageListeners) {
+            try {
+                listener.pageCompleted(event);
+            } catch (RuntimeException e) {
+                logger.warn("Page listener failed for " + event + ": " + e.toString());
+            }
+        }
+    }
+
+    /**
+     * Get the page counter of a written file. Unless the files are named after the pdf file, the counter is the name of the file, so missing
+     * pages do not shift the following ones. Otherwise the position of the file within the files of the pdf file is used
+     * 
+     * @param document the pdf file the file was extracted from
+     * @param file the written file
+     * @param index the position of the file within the files of its stage
+     * @return the page counter
+     */
+    private int getPage(ExtractionResult.DocumentResult document, File file, int index) {
+        if (!"PDF_FILENAME".equals(config.getFileNamingStrategy())) {
+            String baseName = FilenameUtils.getBaseName(file.getName());
+            if (StringUtils.isNumeric(baseName) && baseName.length() < 10) {
+                return Integer.parseInt(baseName);
+            }
+        }
+        return document.getFirstPage() + index;
+    }
+
+    private void fireExtractionFinished(int numberOfPages) {
+        for (PageCompletionListener listener : pageListeners) {
+            try {
+                listener.extractionFinished(getProcessId(), numberOfPages);
+            } catch (RuntimeException e) {
+                logger.warn("Page listener failed for finished extraction: " + e.toString());
+            }
+        }
+    }
+
+    private void fireExtractionFailed(Throwable cause) {
+        for (PageCompletionListener listener : pageListeners) {
+            try {
+                listener.extractionFailed(getProcessId(), cause);
+            } catch (RuntimeException e) {
+                logger.warn("Page listener failed for failed extraction: " + e.toString());
+            }
+        }
+    }
+
+    private Integer getProcessId() {
+        return step == null ? null : step.getProzess().getId();
+    }
+
+    /**
+     * Get the folder into which the pdf converter should write files destined for the given folder. If the page writer is used, this is a
+     * subfolder of the staging folder
+     * 
+     * @param folder the destination folder
+     * @return the folder to write to
+     * @throws IOException
+     */
+    private File getOutputFolder(Path folder) throws IOException {
+        if (pageWriter == null) {
+            return folder.toFile();
+        }
+        Path stagedFolder = stagingFolder.resolve(folder.getFileName());
+        Files.createDirectories(stagedFolder);
+        return stagedFolder.toFile();
+    }
+
+    /**
+     * Hand the given files to the page writer if it is used. Otherwise just record their checksums if configured. The page listeners are informed
+     * about each file once it is in its destination folder
+     * 
+     * @param files files written into the folder returned by {@link #getOutputFolder(Path)}
+     * @param folder the destination folder
+     * @param document the pdf file the files were extracted from
+     * @param stage the stage which wrote the files
+     * @return the files in the destination folder
+     * @throws IOException
+     */
+    private List<File> queueForWriting(List<File> files, Path folder, ExtractionResult.DocumentResult document, ExtractionResult.Stage stage)
+            throws IOException {
+        if (pageWriter == null) {
+            addChecksums(files, folder);
+            firePagesCompleted(document, stage, files);
+            return files;
+        }
+        return pageWriter.submit(files, folder, getChecksumManifest(folder),
+                pageListeners.isEmpty() ? null : (file, index) -> firePageCompleted(document, stage, file, index), (file, e) -> {
+                    synchronized (pageWriteErrors) {
+                        pageWriteErrors.computeIfAbsent(document, d -> new EnumMap<>(ExtractionResult.Stage.class)).putIfAbsent(stage, e);
+                    }
+                });
+    }
+
+    /**
+     * @param folder an output folder
+     * @return the manifest for the files of the folder, which is written into the checksum folder, or null if no checksums are to be written
+     */
+    private ChecksumManifest getChecksumManifest(Path folder) {
+        return checksumManifests == null ? null
+                : checksumManifests.computeIfAbsent(folder, f -> new ChecksumManifest(f, checksumFolder.resolve(f.getFileName() + ".sha256")));
+    }
+
+    /**
+     * Record the checksums of files which the pdf converter has written directly into their destination folder, if configured
+     * 
+     * @param files
+     * @param folder
+     * @throws IOException
+     */
+    private void addChecksums(List<File> files, Path folder) throws IOException {
+        ChecksumManifest manifest = getChecksumManifest(folder);
+        if (manifest != null) {
+            manifest.addFiles(files);
+        }
+    }
+
+    private void writeChecksumManifests() throws IOException {
+        if (checksumManifests != null) {
+            for (ChecksumManifest manifest : checksumManifests.values()) {
+                if (!manifest.isEmpty()) {
+                    boolean exists = Files.exists(manifest.getManifestFile());
+                    Path manifestFile = manifest.write();
+                    if (!exists) {
+                        reverter.addCreatedPath(manifestFile.toFile());
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Set a file namer for the output files for the pdf converter
      */
     private void preparePDFConverter() {
-        String naming = this.config.getString("fileNaming.strategy", "CONSECUTIVE_COUNT");
+        String naming = this.config.getFileNamingStrategy();
         switch (naming) {
             case "PDF_FILENAME":
                 PDFConverter.setFileNamingStrategy(new PdfFilenameNamer("%03d"));
                 break;
             case "CONSECUTIVE_COUNT":
             default:
-                PDFConverter.setFileNamingStrategy(new NumberFormatNamer("%08d"));
+                PDFConverter.setFileNamingStrategy(new NumberFormatNamer(CONSECUTIVE_COUNT_FORMAT));
         }
     }
 
@@ -483,17 +769,55 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
     private void deleteFilesInFolder(String folder, Filter<Path> fileFilter) throws IOException {
         List<Path> imageFiles;
         if (fileFilter != null) {
-            imageFiles = StorageProvider.getInstance().listFiles(folder, fileFilter);
+            imageFiles = environment.listFiles(folder, fileFilter);
         } else {
-            imageFiles = StorageProvider.getInstance().listFiles(folder);
+            imageFiles = environment.listFiles(folder);
         }
         if (imageFiles != null) {
             for (Path file : imageFiles) {
-                StorageProvider.getInstance().deleteFile(file);
+                environment.deleteFile(file);
             }
         }
     }
 
+    /**
+     * Get the folder within the temporary folder into which the files for the given destination folder are written. It is uploaded to the
+     * destination folder after the extraction
+     * 
+     * @param destination the configured destination folder
+     * @return the folder within the temporary folder
+     */
+    private Path getUploadFolder(Path destination) {
+        Path folder = Paths.get(tempFolder.toString(), destination.getFileName().toString());
+        uploadFolders.put(folder, destination);
+        return folder;
+    }
+
+    /**
+     * Get the path a written file has in its destination folder. This differs from the written file only if the file is uploaded after the
+     * extraction
+     * 
+     * @param file the written file
+     * @return the file in its destination folder
+     */
+    private File getDestinationFile(File file) {
+        Path path = file.toPath();
+        for (Map.Entry<Path, Path> folder : uploadFolders.entrySet()) {
+            if (path.startsWith(folder.getKey())) {
+                return folder.getValue().resolve(folder.getKey().relativize(path)).toFile();
+            }
+        }
+        return file;
+    }
+
+    private boolean containsFiles(Path folder) throws IOException {
+        if (!Files.isDirectory(folder)) {
+            return false;
+        }
+        List<Path> files = environment.listFiles(folder.toString());
+        return files != null && !files.isEmpty();
+    }
+
     private DocStruct getTopStruct(Fileformat ff) throws PreferencesException {
         DocStruct top = ff.getDigitalDocument().getLogicalDocStruct();
         if (top.getType().isAnchor() && !top.getAllChildren().isEmpty()) {
@@ -520,12 +844,13 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
      * @param prefs
      * @return
      * @throws IOException
+     * @throws InterruptedException
      * @throws PDFWriteException
      * @throws UGHException
      * @throws JDOMException
      */
-    private Fileformat convertPdf(File importFile, Fileformat origFileformat, Prefs prefs, DocStruct parent, String childDocType, MutableInt counter)
-            throws PDFReadException, PDFWriteException, IOException, UGHException {
+    private Fileformat convertPdf(File importFile, Fileformat origFileformat, Prefs prefs, DocStruct parent, String childDocType, MutableInt counter,
+            ExtractionResult result) throws PDFReadException, PDFWriteException, IOException, InterruptedException, UGHException {
         File importPdfFile = PDFConverter.decryptPdf(importFile, importFolder.toFile());
         if (importPdfFile == null || !importPdfFile.exists()) {
             importPdfFile = getImportPdfFile(importFile, false);
@@ -538,14 +863,55 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
         }
         reverter.addMovedPath(importFile, importPdfFile);
 
-        int imageResolution = config.getInt("images.resolution", 300);
-        String imageFormat = config.getString("images.format", "tif");
+        try (ParallelTextExtractor textExtractor = shouldExtractTextInParallel()
+                        ? new ParallelTextExtractor(importPdfFile, getTempFolder(), config.getParallelTextThreads(), CONSECUTIVE_COUNT_FORMAT)
+                        : null) {
+            ExtractionResult.DocumentResult document = result.addDocument(importPdfFile, counter.intValue());
+            return convertPdf(importPdfFile, textExtractor, origFileformat, prefs, parent, childDocType, counter, document);
+        }
+    }
+
+    /**
+     * Write the configured files and metadata for a pdf file in the import folder
+     * 
+     * @param importPdfFile the pdf file in the import folder
+     * @param textExtractor extracts the text and alto files page by page if configured. May be null
+     * @param origFileformat
+     * @param prefs
+     * @param parent
+     * @param childDocType
+     * @param counter the counter of the first page of the pdf file. Incremented by the number of pages
+     * @param document the result of the pdf file, which receives the written files, stage durations and degradations
+     * @return the fileformat with the new pages and structure elements
+     */
+    private Fileformat convertPdf(File importPdfFile, ParallelTextExtractor textExtractor, Fileformat origFileformat, Prefs prefs,
+            DocStruct parent, String childDocType, MutableInt counter, ExtractionResult.DocumentResult document)
+            throws PDFReadException, PDFWriteException, IOException, InterruptedException, UGHException {
+        int imageResolution = config.getImageResolution();
+        String imageFormat = config.getImageFormat();
+
+        List<File> pdfFiles = Collections.emptyList();
+        // the parallel text extraction reads the page pdfs, so they are written before the text
+        boolean pagePdfsFirst = textExtractor != null && shouldWriteSinglePagePdfs();
+        if (pagePdfsFirst) {
+            pdfFiles = writeSinglePagePdfs(importPdfFile, textExtractor, counter, document);
+        }
 
         List<File> textFiles = Collections.emptyList();
         if (shouldWritePlainText()) {
+            long start = System.currentTimeMillis();
             try {
-                textFiles = PDFConverter.writeFullText(importPdfFile, textFolder.toFile(), DEFAULT_ENCODING, counter.toInteger());
+                List<File> writtenFiles;
+                if (textExtractor != null) {
+                    writtenFiles = textExtractor.writeFullText(getOutputFolder(textFolder), DEFAULT_ENCODING, counter.intValue());
+                } else {
+                    writtenFiles = PDFConverter.writeFullText(importPdfFile, getOutputFolder(textFolder), DEFAULT_ENCODING, counter.toInteger());
+                }
+                countTextCharacters(writtenFiles, document);
+                long[] sizes = getFileSizes(writtenFiles);
+                textFiles = queueForWriting(writtenFiles, textFolder, document, ExtractionResult.Stage.TEXT);
                 reverter.addCreatedPaths(textFiles);
+                addToResult(document, ExtractionResult.Stage.TEXT, textFiles, sizes);
                 logger.debug("Created " + textFiles.size() + " text files in " + textFolder);
             } catch (PDFReadException | PDFWriteException e) {
                 String message = "Failed reading fulltext from pdf {1}: {2}".replace("{1}", importPdfFile.toString()).replace("{2}", e.toString());
@@ -554,55 +920,102 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
                     throw e;
                 } else {
                     writeLogEntry(LogType.WARN, message);
+                    document.addDegradation(ExtractionResult.Stage.TEXT, e.toString());
                     deleteFilesAndFolder(textFiles);
                 }
+            } finally {
+                document.addDuration(ExtractionResult.Stage.TEXT, System.currentTimeMillis() - start);
             }
         }
 
-        List<File> pdfFiles = Collections.emptyList();
-        if (shouldWriteSinglePagePdfs()) {
-            try {
-                pdfFiles = PDFConverter.writeSinglePagePdfs(importPdfFile, pdfFolder.toFile(), counter.toInteger());
-                reverter.addCreatedPaths(pdfFiles);
-                logger.debug("Created " + pdfFiles.size() + " PDF files in " + pdfFolder);
-            } catch (PDFReadException | PDFWriteException e) {
-                String message =
-                        "Failed extracting single page pdfs from pdf {1}: {2}".replace("{1}", importPdfFile.toString()).replace("{2}", e.toString());
-                logger.warn(message);
-                if (shouldFailOnSinglePagePdfError()) {
-                    throw e;
-                } else {
-                    writeLogEntry(LogType.WARN, message);
-                    deleteFilesAndFolder(pdfFiles);
-                }
-            }
+        if (shouldWriteSinglePagePdfs() && !pagePdfsFirst) {
+            pdfFiles = writeSinglePagePdfs(importPdfFile, null, counter, document);
         }
 
         List<File> imageFiles = Collections.emptyList();
+        int pageCount = 0;
         if (shouldWriteImageFiles()) {
+            long start = System.currentTimeMillis();
+            boolean imagesReported = false;
+            boolean checksumsAdded = false;
             try {
-                imageFiles =
-                        PDFConverter.writeImages(importPdfFile, tifFolder.toFile(), counter.toInteger(), imageResolution, imageFormat,
-                                getTempFolder(), getImageGenerationMethod(), getImageGenerationParams());
+                String feature = config.isAutoImageGenerator() ? DocumentFeatures.classify(importPdfFile, DocumentFeatures.DEFAULT_SCAN_BYTES) : null;
+                if (shouldSuperviseImageGeneration()) {
+                    pageCount = getNumberOfPages(importPdfFile);
+                }
+                boolean supervised = pageCount > 0;
+                UnaryOperator<String> modes = candidate -> getImageGenerationMode(supervised, candidate, imageFormat);
+                String generator = chooseImageGenerator(feature, imageResolution, modes);
+                int degradedPages = document.getDegradedPages().size();
+                long renderStart = System.currentTimeMillis();
+                if (supervised) {
+                    imageFiles = writeImagesSupervised(importPdfFile, pageCount, counter.intValue(), imageResolution, imageFormat, generator,
+                            document);
+                } else if (shouldStreamImages(generator, imageFormat)) {
+                    try (StreamingImageWriter writer = new StreamingImageWriter(generator, imageResolution, imageFormat,
+                            getImageGenerationParams(generator), CONSECUTIVE_COUNT_FORMAT, config.getStreamingThreads())) {
+                        // images of blank pages may still be replaced, so they are only reported early without page content detection
+                        ObjIntConsumer<File> onWritten = shouldDetectPageContent() ? null
+                                : (file, index) -> firePageCompleted(document, ExtractionResult.Stage.IMAGES, file, index);
+                        // the page content detection calculates the checksums while reading the images anyway
+                        ChecksumManifest manifest = shouldDetectPageContent() ? null : getChecksumManifest(tifFolder);
+                        imageFiles = writer.writeImages(importPdfFile, tifFolder.toFile(), counter.intValue(), onWritten, manifest);
+                        imagesReported = onWritten != null;
+                        checksumsAdded = manifest != null;
+                    }
+                } else {
+                    imageFiles = PDFConverter.writeImages(importPdfFile, tifFolder.toFile(), counter.toInteger(), imageResolution, imageFormat,
+                            getTempFolder(), generator, getImageGenerationParams(generator));
+                }
                 reverter.addCreatedPaths(imageFiles);
+                if (feature != null && document.getDegradedPages().size() == degradedPages) {
+                    recordImageGenerator(feature, imageResolution, modes.apply(generator), generator, imageFiles.size(),
+                            System.currentTimeMillis() - renderStart);
+                }
+                if (shouldDetectPageContent()) {
+                    detectPageContent(importPdfFile, imageFiles, document.getPagesWithText());
+                } else if (!checksumsAdded) {
+                    addChecksums(imageFiles, tifFolder);
+                }
+                addToResult(document, ExtractionResult.Stage.IMAGES, imageFiles, getFileSizes(imageFiles));
+                if (!imagesReported) {
+                    firePagesCompleted(document, ExtractionResult.Stage.IMAGES, imageFiles);
+                }
                 logger.debug("Created " + imageFiles.size() + " TIFF files in " + tifFolder);
-            } catch (PDFWriteException e) {
+            } catch (PDFWriteException | IOException e) {
                 String message = "Failed extracting images from pdf {1}: {2}".replace("{1}", importPdfFile.toString()).replace("{2}", e.toString());
                 logger.warn(message);
                 if (shouldFailOnImagesError()) {
                     throw e;
                 } else {
                     writeLogEntry(LogType.WARN, message);
+                    document.addDegradation(ExtractionResult.Stage.IMAGES, e.toString());
                     deleteFilesAndFolder(imageFiles);
                 }
+            } finally {
+                document.addDuration(ExtractionResult.Stage.IMAGES, System.currentTimeMillis() - start);
             }
         }
 
         List<File> altoFiles = Collections.emptyList();
         if (shouldWriteAltoFiles()) {
+            long start = System.currentTimeMillis();
             try {
-                altoFiles = PDFConverter.writeAltoFiles(importPdfFile, altoFolder.toFile(), imageFiles, false, counter.toInteger());
+                List<File> writtenFiles;
+                if (textExtractor != null) {
+                    Map<String, File> imagesByName = imageFiles.stream()
+                            .collect(Collectors.toMap(file -> FilenameUtils.getBaseName(file.getName()), file -> file, (first, second) -> first));
+                    writtenFiles = textExtractor.writeAltoFiles(getOutputFolder(altoFolder), pageCounter -> {
+                        File image = imagesByName.get(String.format(CONSECUTIVE_COUNT_FORMAT, pageCounter));
+                        return image == null ? Collections.<File> emptyList() : List.of(image);
+                    }, counter.intValue());
+                } else {
+                    writtenFiles = PDFConverter.writeAltoFiles(importPdfFile, getOutputFolder(altoFolder), imageFiles, false, counter.toInteger());
+                }
+                long[] sizes = getFileSizes(writtenFiles);
+                altoFiles = queueForWriting(writtenFiles, altoFolder, document, ExtractionResult.Stage.ALTO);
                 reverter.addCreatedPaths(altoFiles);
+                addToResult(document, ExtractionResult.Stage.ALTO, altoFiles, sizes);
                 logger.debug("Created " + altoFiles.size() + " ALTO files in " + altoFolder);
             } catch (PDFReadException | PDFWriteException e) {
                 String message = "Failed writing alto files from pdf {1}: {2}".replace("{1}", importPdfFile.toString()).replace("{2}", e.toString());
@@ -611,9 +1024,11 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
                     throw new UGHException(e);
                 } else {
                     writeLogEntry(LogType.WARN, message);
+                    document.addDegradation(ExtractionResult.Stage.ALTO, e.toString());
                     deleteFilesAndFolder(altoFiles);
                 }
             } finally {
+                document.addDuration(ExtractionResult.Stage.ALTO, System.currentTimeMillis() - start);
                 if (!shouldWriteSinglePagePdfs()) {
                     //if single page pdf were only written to create alto files, delete them now
                     deleteFilesAndFolder(pdfFiles);
@@ -621,11 +1036,29 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
             }
         }
 
+        if (isOptimizationDeferred(textExtractor, pdfFiles)) {
+            long start = System.currentTimeMillis();
+            try {
+                finishSinglePagePdfs(pdfFiles, document);
+            } finally {
+                document.addDuration(ExtractionResult.Stage.PAGE_PDF, System.currentTimeMillis() - start);
+            }
+        }
+
         Fileformat ff;
+        int numberOfPages = Math.max(pageCount, Math.max(pdfFiles.size(), imageFiles.size()));
+        document.setNumberOfPages(numberOfPages);
         if (shouldWriteMetsFile()) {
+            long start = System.currentTimeMillis();
             try {
                 String childDocTypeToUse = getChildDocTypeToUse(childDocType, parent, origFileformat, prefs);
-                ff = PDFConverter.writeFileformat(importPdfFile, imageFiles, origFileformat, prefs, counter.toInteger(), parent, childDocTypeToUse);
+                if (shouldUseIndexedToc() && StringUtils.isNotBlank(childDocTypeToUse)) {
+                    ff = PDFConverter.writeFileformat(importPdfFile, imageFiles, origFileformat, prefs, counter.toInteger(), parent, "");
+                    addOutlineStructure(importPdfFile, ff, prefs, parent, childDocTypeToUse, counter.intValue());
+                } else {
+                    ff = PDFConverter.writeFileformat(importPdfFile, imageFiles, origFileformat, prefs, counter.toInteger(), parent,
+                            childDocTypeToUse);
+                }
                 logger.debug("Created Mets/Mods fileformat from PDF");
             } catch (Throwable e) {
                 String message = "Failed writing mets file from pdf {1}: {2}".replace("{1}", importPdfFile.toString()).replace("{2}", e.toString());
@@ -634,30 +1067,296 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
                     throw e;
                 } else {
                     writeLogEntry(LogType.WARN, message);
+                    document.addDegradation(ExtractionResult.Stage.METS, e.toString());
                     return origFileformat;
                 }
+            } finally {
+                document.addDuration(ExtractionResult.Stage.METS, System.currentTimeMillis() - start);
             }
         } else {
             ff = origFileformat;
         }
 
-        counter.add(Math.max(pdfFiles.size(), imageFiles.size()));
+        counter.add(numberOfPages);
 
         return ff;
     }
 
+    /**
+     * Record the number of characters other than whitespace of each page in the result. This is done directly after writing the text files, while
+     * they are still in the local staging folder or the file system cache
+     * 
+     * @param textFiles the text files of all pages
+     * @param document the result of the pdf file
+     * @throws IOException
+     */
+    private void countTextCharacters(List<File> textFiles, ExtractionResult.DocumentResult document) throws IOException {
+        for (File textFile : textFiles) {
+            String text = FileUtils.readFileToString(textFile, DEFAULT_ENCODING);
+            document.setTextCharacters(textFile, (int) text.codePoints().filter(c -> !Character.isWhitespace(c)).count());
+        }
+    }
+
+    /**
+     * Record the written files of a stage in the result
+     * 
+     * @param document the result of the pdf file
+     * @param stage the stage which wrote the files
+     * @param files the files in their destination folder
+     * @param sizes the sizes of the files
+     */
+    private void addToResult(ExtractionResult.DocumentResult document, ExtractionResult.Stage stage, List<File> files, long[] sizes) {
+        for (int i = 0; i < files.size(); i++) {
+            document.addFile(stage, files.get(i), sizes[i]);
+        }
+    }
+
+    /**
+     * Get the sizes of the files. Files in the staging folder must be measured before they are handed to the page writer
+     */
+    private static long[] getFileSizes(List<File> files) {
+        return files.stream().mapToLong(File::length).toArray();
+    }
+
+    /**
+     * Find blank pages and near duplicate pages within the images of a pdf file and write a report listing them into the import folder. If
+     * configured, the images of blank pages are replaced by bilevel images. All pages keep their file names, so the page numbering is not affected.
+     * The checksums of the images are computed from the same read as the analysis, or while writing the bilevel image
+     * 
+     * @param importPdfFile
+     * @param imageFiles the images of all pages of the pdf file
+     * @param pagesWithText the base names of the text files of all pages from which text was extracted
+     * @throws IOException
+     */
+    private void detectPageContent(File importPdfFile, List<File> imageFiles, Set<String> pagesWithText) throws IOException {
+        PageContentDetector detector = new PageContentDetector(config.getBlankThreshold(), config.getDuplicateDistance());
+        boolean writeBilevel = config.isBilevelBlankPages();
+        ChecksumManifest manifest = getChecksumManifest(tifFolder);
+        List<File> filesToHash = new ArrayList<>();
+        int blankPages = 0;
+        int duplicatePages = 0;
+        for (File imageFile : imageFiles) {
+            MessageDigest digest = manifest == null ? null : ChecksumManifest.createDigest();
+            try {
+                boolean hasText = pagesWithText.contains(FilenameUtils.getBaseName(imageFile.getName()));
+                PageContentDetector.PageInfo page = detector.analyze(imageFile, hasText, digest);
+                if (page.isBlank()) {
+                    blankPages++;
+                    MessageDigest bilevelDigest = manifest == null ? null : ChecksumManifest.createDigest();
+                    if (writeBilevel && PageContentDetector.writeBilevel(imageFile, bilevelDigest)) {
+                        // the analysed content has been replaced
+                        digest = bilevelDigest;
+                    }
+                } else if (page.isDuplicate()) {
+                    duplicatePages++;
+                }
+            } catch (IOException e) {
+                logger.warn("Cannot check content of image " + imageFile + ": " + e.toString());
+                digest = null;
+            }
+            if (digest != null) {
+                manifest.add(imageFile.getName(), digest);
+            } else {
+                filesToHash.add(imageFile);
+            }
+        }
+        addChecksums(filesToHash, tifFolder);
+        Path reportFile = importFolder.resolve(FilenameUtils.getBaseName(importPdfFile.getName()) + "_pages.csv");
+        detector.writeReport(reportFile);
+        reverter.addCreatedPath(reportFile.toFile());
+        if (blankPages > 0 || duplicatePages > 0) {
+            writeLogEntry(LogType.INFO, "Found {1} blank and {2} duplicate pages in {3}".replace("{1}", Integer.toString(blankPages))
+                    .replace("{2}", Integer.toString(duplicatePages))
+                    .replace("{3}", importPdfFile.getName()));
+        }
+    }
+
+    /**
+     * Optimize the single page pdfs if configured and add them to the checksums and the result
+     * 
+     * @param pdfFiles the single page pdfs in the pdf folder
+     * @param document the result of the pdf file
+     */
+    /**
+     * Write the single page pdfs of a pdf file. If the text is extracted in parallel, the page pdfs are handed over to the text extractor
+     * 
+     * @param importPdfFile the pdf file in the import folder
+     * @param textExtractor the parallel text extractor. May be null
+     * @param counter the counter of the first page of the pdf file
+     * @param document the result of the pdf file
+     * @return the single page pdfs
+     */
+    private List<File> writeSinglePagePdfs(File importPdfFile, ParallelTextExtractor textExtractor, MutableInt counter,
+            ExtractionResult.DocumentResult document) throws PDFReadException, PDFWriteException, IOException, InterruptedException {
+        List<File> pdfFiles = Collections.emptyList();
+        long start = System.currentTimeMillis();
+        try {
+            pdfFiles = PDFConverter.writeSinglePagePdfs(importPdfFile, pdfFolder.toFile(), counter.toInteger());
+            reverter.addCreatedPaths(pdfFiles);
+            if (textExtractor != null && !pdfFiles.isEmpty()) {
+                textExtractor.usePagePdfs(pdfFiles);
+            }
+            if (!isOptimizationDeferred(textExtractor, pdfFiles)) {
+                finishSinglePagePdfs(pdfFiles, document);
+            }
+        } catch (PDFReadException | PDFWriteException e) {
+            String message =
+                    "Failed extracting single page pdfs from pdf {1}: {2}".replace("{1}", importPdfFile.toString()).replace("{2}", e.toString());
+            logger.warn(message);
+            if (shouldFailOnSinglePagePdfError()) {
+                throw e;
+            } else {
+                writeLogEntry(LogType.WARN, message);
+                document.addDegradation(ExtractionResult.Stage.PAGE_PDF, e.toString());
+                deleteFilesAndFolder(pdfFiles);
+            }
+        } finally {
+            document.addDuration(ExtractionResult.Stage.PAGE_PDF, System.currentTimeMillis() - start);
+        }
+        return pdfFiles;
+    }
+
+    /**
+     * Optimizing may rewrite the fonts of the pages, so page pdfs which the parallel text extraction reads are only optimized after the ALTO stage
+     */
+    private boolean isOptimizationDeferred(ParallelTextExtractor textExtractor, List<File> pdfFiles) {
+        return textExtractor != null && !pdfFiles.isEmpty() && shouldOptimizeSinglePagePdfs();
+    }
+
+    private void finishSinglePagePdfs(List<File> pdfFiles, ExtractionResult.DocumentResult document) throws IOException, InterruptedException {
+        if (shouldOptimizeSinglePagePdfs()) {
+            optimizeSinglePagePdfs(pdfFiles, document);
+        }
+        addChecksums(pdfFiles, pdfFolder);
+        addToResult(document, ExtractionResult.Stage.PAGE_PDF, pdfFiles, getFileSizes(pdfFiles));
+        firePagesCompleted(document, ExtractionResult.Stage.PAGE_PDF, pdfFiles);
+        logger.debug("Created " + pdfFiles.size() + " PDF files in " + pdfFolder);
+    }
+
+    /**
+     * Reduce the size of the single page pdfs by subsetting fonts and removing unused resources. Pages which cannot be optimized are kept as they are
+     * 
+     * @param pdfFiles
+     * @param document the result of the pdf file
+     * @throws InterruptedException
+     */
+    private void optimizeSinglePagePdfs(List<File> pdfFiles, ExtractionResult.DocumentResult document) throws InterruptedException {
+        try {
+            PagePdfOptimizer optimizer = new PagePdfOptimizer(config.getOptimizationTools(), config.getOptimizationThreads(), getTempFolder());
+            List<File> failedPages = optimizer.optimize(pdfFiles);
+            logger.debug(optimizer.getReport());
+            if (!failedPages.isEmpty()) {
+                String message = "Failed to optimize {1} single page pdfs in {2}, they are kept unchanged: {3}"
+                        .replace("{1}", Integer.toString(failedPages.size()))
+                        .replace("{2}", pdfFolder.toString())
+                        .replace("{3}", failedPages.stream().map(File::getName).collect(Collectors.joining(", ")));
+                writeLogEntry(LogType.WARN, message);
+                document.addDegradation(ExtractionResult.Stage.PAGE_PDF, message);
+            }
+        } catch (IOException e) {
+            String message = "Failed to optimize single page pdfs in {1}: {2}".replace("{1}", pdfFolder.toString()).replace("{2}", e.toString());
+            logger.warn(message);
+            writeLogEntry(LogType.WARN, message);
+            document.addDegradation(ExtractionResult.Stage.PAGE_PDF, message);
+        }
+    }
+
+    /**
+     * Get the number of pages of the pdf file for supervised image generation
+     * 
+     * @param importPdfFile
+     * @return the number of pages or 0 if it could not be determined, in which case images are created without supervision
+     * @throws InterruptedException
+     */
+    private int getNumberOfPages(File importPdfFile) throws InterruptedException {
+        try {
+            return ExternalCommand.getNumberOfPages(importPdfFile);
+        } catch (IOException e) {
+            logger.warn("Cannot determine number of pages of " + importPdfFile + ". Creating images without supervision: " + e.toString());
+            return 0;
+        }
+    }
+
+    /**
+     * Create the images of the pdf file in chunks of pages with a time limit for each chunk. Pages which cannot be rendered within the limit are
+     * retried with fallback settings and reported in the journal
+     * 
+     * @param importPdfFile
+     * @param pageCount
+     * @param counter
+     * @param imageResolution
+     * @param imageFormat
+     * @param document the result of the pdf file, which receives the degraded pages
+     * @return one image file for each page. Pages which could not be rendered have a blank placeholder image
+     * @throws PDFWriteException if not a single image could be created
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private List<File> writeImagesSupervised(File importPdfFile, int pageCount, int counter, int imageResolution, String imageFormat,
+            String generator, ExtractionResult.DocumentResult document) throws PDFWriteException, IOException, InterruptedException {
+        try (SupervisedImageWriter writer = new SupervisedImageWriter(generator, config.getSupervisionFallbackGenerator(), imageResolution,
+                config.getSupervisionFallbackResolution(), imageFormat, getImageGenerationParams(generator), CONSECUTIVE_COUNT_FORMAT,
+                getTempFolder(), config.getSupervisionChunkSize(), config.getSupervisionPageTimeout())) {
+            List<File> imageFiles = writer.writeImages(importPdfFile, tifFolder.toFile(), pageCount, counter);
+            if (writer.getDegradedPages().stream().filter(DegradedPage::isMissing).count() == imageFiles.size()) {
+                imageFiles.forEach(FileUtils::deleteQuietly);
+                throw new PDFWriteException("No images could be created from " + importPdfFile);
+            }
+            if (!writer.getDegradedPages().isEmpty()) {
+                document.addDegradedPages(writer.getDegradedPages());
+                String message = "Some pages of {1} could not be converted to images as configured: {2}".replace("{1}", importPdfFile.getName())
+                        .replace("{2}", writer.getDegradedPages().stream().map(DegradedPage::toString).collect(Collectors.joining("; ")));
+                logger.warn(message);
+                writeLogEntry(LogType.WARN, message);
+            }
+            return imageFiles;
+        }
+    }
+
+    /**
+     * Create the logical structure for the outline of the pdf file. The outline is read with qpdf and mapped to the pages of the pdf file in a
+     * single pass
+     * 
+     * @param importPdfFile
+     * @param ff the fileformat which already contains the pages of the pdf file
+     * @param prefs
+     * @param parent the structure element for the pdf file. If null, the outline is added to the top structure element
+     * @param docTypeName the type of the created structure elements
+     * @param counter the counter of the first page of the pdf file
+     * @throws UGHException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void addOutlineStructure(File importPdfFile, Fileformat ff, Prefs prefs, DocStruct parent, String docTypeName, int counter)
+            throws UGHException, IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        List<OutlineReader.OutlineEntry> entries = OutlineReader.read(importPdfFile);
+        DigitalDocument document = ff.getDigitalDocument();
+        List<DocStruct> allPages = document.getPhysicalDocStruct().getAllChildren();
+        if (entries.isEmpty() || allPages == null || allPages.size() < counter) {
+            return;
+        }
+        OutlineStructureBuilder builder = new OutlineStructureBuilder(document, prefs, prefs.getDocStrctTypeByName(docTypeName),
+                config.getTocMaxDepth(), config.isTocFlatten());
+        int created = builder.build(parent == null ? getTopStruct(ff) : parent, entries, allPages.subList(counter - 1, allPages.size()));
+        logger.debug("Created " + created + " structure elements for " + entries.size() + " outline entries of " + importPdfFile + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
     private String getChildDocTypeToUse(String childDocTypeName, DocStruct parent, Fileformat ff, Prefs prefs) {
         try {
             DocStruct parentToUse = parent == null ? ff.getDigitalDocument().getLogicalDocStruct() : parent;
             if (parentToUse.getType().isAnchor() && !parentToUse.getAllChildren().isEmpty()) {
                 parentToUse = parentToUse.getAllChildren().get(0);
             }
-            DocStructType childDocType = prefs.getDocStrctTypeByName(childDocTypeName);
-            if (parentToUse.isDocStructTypeAllowedAsChild(childDocType)) {
-                return childDocType.getName();
-            } else {
-                return "";
+            String key = parentToUse.getType().getName() + "|" + childDocTypeName;
+            String childDocTypeToUse = childDocTypes.get(key);
+            if (childDocTypeToUse == null) {
+                DocStructType childDocType = prefs.getDocStrctTypeByName(childDocTypeName);
+                childDocTypeToUse = parentToUse.isDocStructTypeAllowedAsChild(childDocType) ? childDocType.getName() : "";
+                childDocTypes.put(key, childDocTypeToUse);
             }
+            return childDocTypeToUse;
         } catch (PreferencesException e) {
             logger.debug(
                     "Cannot find suitable docStruct for preferred type %s and parent %s: %s".formatted(childDocTypeName,
@@ -696,53 +1395,113 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
     }
 
     private void writeLogEntry(LogType type, String message) {
-        Helper.addMessageToProcessJournal(step.getProzess().getId(), type, message, "automatic");
+        environment.addMessageToProcessJournal(step.getProzess().getId(), type, message, "automatic");
     }
 
     private boolean shouldFailOnAltoError() {
-        return config.getBoolean("alto.failOnError", true);
+        return config.isFailOnAltoError();
     }
 
     private boolean shouldFailOnImagesError() {
-        return config.getBoolean("images.failOnError", true);
+        return config.isFailOnImagesError();
 
     }
 
     private boolean shouldFailOnSinglePagePdfError() {
-        return config.getBoolean("pagePdfs.failOnError", true);
+        return config.isFailOnSinglePagePdfError();
 
     }
 
     private boolean shouldFailOnPlaintextError() {
-        return config.getBoolean("plaintext.failOnError", true);
+        return config.isFailOnPlainTextError();
     }
 
     private boolean shouldFailOnMetsError() {
-        return config.getBoolean("mets.failOnError", true);
+        return config.isFailOnMetsError();
+
+    }
+
+    private boolean shouldFailOnError(ExtractionResult.Stage stage) {
+        switch (stage) {
+            case TEXT:
+                return shouldFailOnPlaintextError();
+            case PAGE_PDF:
+                return shouldFailOnSinglePagePdfError();
+            case IMAGES:
+                return shouldFailOnImagesError();
+            case ALTO:
+                return shouldFailOnAltoError();
+            case METS:
+            default:
+                return shouldFailOnMetsError();
+        }
+    }
+
+    /**
+     * Text and alto files are only extracted page by page if their names are derived from the page counter alone
+     */
+    private boolean shouldExtractTextInParallel() {
+        return config.isParallelText() && (shouldWritePlainText() || shouldWriteAltoFiles())
+                && !"PDF_FILENAME".equals(config.getFileNamingStrategy());
+    }
+
+    /**
+     * Images are only streamed from the generator if their names are derived from the page counter alone and the format can be encoded by the
+     * plugin
+     */
+    private boolean shouldStreamImages(String generator, String imageFormat) {
+        return config.isStreamImages() && !"PDF_FILENAME".equals(config.getFileNamingStrategy())
+                && StreamingImageWriter.isSupported(generator, imageFormat);
+    }
 
+    private boolean shouldUseIndexedToc() {
+        return "indexed".equalsIgnoreCase(config.getTocEngine());
+    }
+
+    private boolean shouldDetectPageContent() {
+        return config.isDetectPageContent();
+    }
+
+    private boolean shouldOptimizeSinglePagePdfs() {
+        return config.isOptimizeSinglePagePdfs();
+    }
+
+    private boolean shouldWriteChecksums() {
+        return config.isWriteChecksums();
+    }
+
+    /**
+     * Images are only created under supervision if their names are derived from the page counter alone, since each page may be rendered separately
+     */
+    private boolean shouldSuperviseImageGeneration() {
+        return config.isSuperviseImageGeneration() && !"PDF_FILENAME".equals(config.getFileNamingStrategy());
     }
 
     private boolean shouldWriteAltoFiles() {
-        return config.getBoolean("alto.write", true);
+        return config.isWriteAltoFiles();
     }
 
     private boolean shouldWriteImageFiles() {
-        return config.getBoolean("images.write", true);
+        return config.isWriteImages();
     }
 
     private boolean shouldWriteSinglePagePdfs() {
-        return config.getBoolean("pagePdfs.write", true);
+        return config.isWriteSinglePagePdfs();
     }
 
     private boolean shouldWritePlainText() {
-        return config.getBoolean("plaintext.write", true);
+        return config.isWritePlainText();
     }
 
     private boolean shouldWriteMetsFile() {
-        return config.getBoolean("mets.write", true);
+        return config.isWriteMets();
 
     }
 
+    private Path getConfigFile() {
+        return Paths.get(environment.getConfigurationFolder(), "plugin_" + this.getTitle() + ".xml");
+    }
+
     protected Configuration getConfig(String projectName, String stepName) throws PluginConfigurationException {
         XMLConfiguration baseConfig = ConfigPlugins.getPluginConfig(this.getTitle());
         if ("config".equals(baseConfig.getRootElementName())) {
@@ -788,7 +1547,7 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
     }
 
     private File getTempFolder() throws IOException {
-        String folderpath = ConfigurationHelper.getInstance().getTemporaryFolder();
+        String folderpath = environment.getTemporaryFolder();
         if (StringUtils.isNotBlank(folderpath)) {
             return new File(folderpath);
         } else {
@@ -796,11 +1555,60 @@ public class PDFExtractionPlugin implements IPlugin, IStepPlugin {
         }
     }
 
-    private String getImageGenerationMethod() {
-        return this.config.getString("images.generator", "ghostscript");
+    private String[] getImageGenerationParams(String generator) {
+        return this.config.getImageGeneratorParams(generator);
+    }
+
+    /**
+     * Get the generator to render the images of a pdf file with. If the generator is 'auto', it is chosen from the recorded throughput of the
+     * generators for documents of the same kind
+     * 
+     * @param feature the kind of the pdf file as determined by {@link DocumentFeatures}. Null if the generator is not chosen automatically
+     * @param resolution the resolution of the images
+     * @param modes the mode in which the images are created with a generator
+     * @return the generator to use
+     */
+    private String chooseImageGenerator(String feature, int resolution, UnaryOperator<String> modes) {
+        if (feature == null) {
+            return config.getImageGenerator();
+        }
+        List<String> generators = config.getAutoGenerators();
+        try {
+            String generator = getGeneratorStatistics().choose(feature, resolution, generators, modes);
+            logger.debug("Using generator " + generator + " for " + feature + " document");
+            return generator;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot read generator statistics, using " + generators.get(0) + ": " + e.toString());
+            return generators.get(0);
+        }
+    }
+
+    private void recordImageGenerator(String feature, int resolution, String mode, String generator, int pages, long millis) {
+        try {
+            getGeneratorStatistics().record(feature, resolution, mode, generator, pages, millis);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot write generator statistics: " + e.toString());
+        }
+    }
+
+    /**
+     * Get the mode in which the images are created with the given generator, under which its throughput is recorded
+     */
+    private String getImageGenerationMode(boolean supervised, String generator, String imageFormat) {
+        if (supervised) {
+            return GeneratorStatistics.SUPERVISED;
+        }
+        return shouldStreamImages(generator, imageFormat) ? GeneratorStatistics.STREAMING : GeneratorStatistics.TEMP_FILE;
     }
 
-    private String[] getImageGenerationParams() {
-        return this.config.getStringArray("images.generatorParameter");
+    private GeneratorStatistics getGeneratorStatistics() {
+        if (generatorStatistics == null) {
+            String configuredFile = config.getAutoGeneratorStatisticsFile();
+            Path file = StringUtils.isBlank(configuredFile) ? Paths.get(environment.getConfigurationFolder(), "pdf-extraction-generators.properties")
+                    : Paths.get(configuredFile);
+            generatorStatistics =
+                    new GeneratorStatistics(file, config.getAutoGeneratorMinRuns(), config.getAutoGeneratorExploration(), new Random());
+        }
+        return generatorStatistics;
     }
 }
@@ -0,0 +1,81 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.io.File;
+
+/**
+ * Informs about a page file of a process which has been written to its destination folder
+ */
+public class PageCompletedEvent {
+
+    private final Integer processId;
+    private final File pdfFile;
+    private final ExtractionResult.Stage stage;
+    private final int page;
+    private final File file;
+
+    /**
+     * @param processId the id of the process
+     * @param pdfFile the pdf file from which the page was extracted
+     * @param stage the stage which wrote the file
+     * @param page the order number of the page within the process
+     * @param file the written file
+     */
+    public PageCompletedEvent(Integer processId, File pdfFile, ExtractionResult.Stage stage, int page, File file) {
+        this.processId = processId;
+        this.pdfFile = pdfFile;
+        this.stage = stage;
+        this.page = page;
+        this.file = file;
+    }
+
+    public Integer getProcessId() {
+        return processId;
+    }
+
+    public File getPdfFile() {
+        return pdfFile;
+    }
+
+    public ExtractionResult.Stage getStage() {
+        return stage;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public String toString() {
+        return stage + " page " + page + " of process " + processId + ": " + file;
+    }
+}
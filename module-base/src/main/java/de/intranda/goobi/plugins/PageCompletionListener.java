@@ -0,0 +1,63 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+
+/**
+ * Receives an event for each page file as soon as it has been written to its destination folder, so that later processing steps can start
+ * before the extraction of the complete process has finished. Listeners may be called from several threads at the same time. Files of an
+ * extraction which fails later on are removed again, so listeners should wait for {@link #extractionFinished(Integer, int)} before they rely on
+ * the files permanently. A failed extraction is reported by {@link #extractionFailed(Integer, Throwable)}. For processes stored in S3 the files are
+ * reported with their path in the destination folder, but they are only uploaded there before {@link #extractionFinished(Integer, int)} is called
+ */
+public interface PageCompletionListener {
+
+    /**
+     * Called when a page file has been written
+     * 
+     * @param event the written file and its page
+     */
+    void pageCompleted(PageCompletedEvent event);
+
+    /**
+     * Called when all files of a process have been written and the METS file has been saved
+     * 
+     * @param processId the id of the process
+     * @param numberOfPages the number of pages extracted from all pdf files of the process
+     */
+    default void extractionFinished(Integer processId, int numberOfPages) {
+    }
+
+    /**
+     * Called when the extraction of a process failed. The files reported for the process are removed again
+     * 
+     * @param processId the id of the process
+     * @param cause the reason of the failure
+     */
+    default void extractionFailed(Integer processId, Throwable cause) {
+    }
+}
@@ -0,0 +1,405 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataFormatImpl;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.log4j.Logger;
+import org.w3c.dom.NodeList;
+
+/**
+ * Detects blank pages and pages which are near duplicates of earlier pages of the same document, like repeated colour targets. The rendered page
+ * images are read with a strong subsampling, so the check is cheap compared to the image generation. A page counts as blank if hardly any pixels
+ * differ from the background of the page and no text was extracted from it. Duplicates are found by comparing a 64 bit difference hash of each
+ * page with the hashes of all earlier pages.
+ */
+public class PageContentDetector {
+
+    private static final Logger logger = Logger.getLogger(PageContentDetector.class);
+
+    /** the approximate width in pixels to which page images are subsampled for analysis */
+    private static final int ANALYSIS_WIDTH = 400;
+    /** the minimal difference in gray levels between a pixel and the page background for the pixel to count as ink */
+    private static final int INK_THRESHOLD = 48;
+
+    private final double blankThreshold;
+    private final int duplicateDistance;
+
+    private final List<PageInfo> pages = new ArrayList<>();
+
+    /**
+     * @param blankThreshold the maximal ratio of ink pixels of a blank page
+     * @param duplicateDistance the maximal number of differing hash bits for a page to be considered a duplicate of an earlier page
+     */
+    public PageContentDetector(double blankThreshold, int duplicateDistance) {
+        this.blankThreshold = blankThreshold;
+        this.duplicateDistance = duplicateDistance;
+    }
+
+    /**
+     * Analyze the next page of the document. If a digest is given, it receives all bytes of the image file, so the file is read only once for the
+     * analysis and its checksum
+     * 
+     * @param imageFile the rendered image of the page
+     * @param hasText true if text was extracted from the page
+     * @param digest the digest for the checksum of the image file. May be null
+     * @return the analysis result
+     * @throws IOException if the image cannot be read
+     */
+    public PageInfo analyze(File imageFile, boolean hasText, MessageDigest digest) throws IOException {
+        BufferedImage image = digest == null ? readSubsampled(imageFile) : readSubsampled(imageFile, digest);
+        if (image == null) {
+            throw new IOException("Cannot read image " + imageFile);
+        }
+        BufferedImage gray = toGray(image, image.getWidth(), image.getHeight());
+        double inkRatio = getInkRatio(gray);
+        long hash = getDifferenceHash(gray);
+        boolean blank = !hasText && inkRatio <= blankThreshold;
+        String duplicateOf = null;
+        if (!blank) {
+            for (PageInfo page : pages) {
+                if (!page.isBlank() && Long.bitCount(page.hash ^ hash) <= duplicateDistance) {
+                    duplicateOf = page.getFileName();
+                    break;
+                }
+            }
+        }
+        PageInfo info = new PageInfo(imageFile.getName(), inkRatio, hash, blank, duplicateOf);
+        pages.add(info);
+        return info;
+    }
+
+    private static BufferedImage readSubsampled(File imageFile) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(imageFile)) {
+            return in == null ? null : readSubsampled(in);
+        }
+    }
+
+    /**
+     * Read the image from a single pass over the file, which also feeds the digest. The bytes which the image reader skips are read afterwards
+     */
+    private static BufferedImage readSubsampled(File imageFile, MessageDigest digest) throws IOException {
+        try (InputStream in = new DigestInputStream(new BufferedInputStream(Files.newInputStream(imageFile.toPath())), digest)) {
+            BufferedImage image;
+            try (ImageInputStream imageIn = new MemoryCacheImageInputStream(in)) {
+                image = readSubsampled(imageIn);
+                // the image reader may stop before the end of the file
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            return image;
+        }
+    }
+
+    private static BufferedImage readSubsampled(ImageInputStream in) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(in, true, true);
+            int subsampling = Math.max(1, reader.getWidth(0) / ANALYSIS_WIDTH);
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private static BufferedImage toGray(BufferedImage image, int width, int height) {
+        BufferedImage gray = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = gray.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return gray;
+    }
+
+    /**
+     * @return the ratio of pixels which differ noticeably from the most frequent gray level, which is taken to be the page background
+     */
+    static double getInkRatio(BufferedImage gray) {
+        int[] histogram = new int[256];
+        byte[] pixels = new byte[gray.getWidth()];
+        for (int y = 0; y < gray.getHeight(); y++) {
+            gray.getRaster().getDataElements(0, y, gray.getWidth(), 1, pixels);
+            for (byte pixel : pixels) {
+                histogram[pixel & 0xff]++;
+            }
+        }
+        int background = 0;
+        for (int i = 1; i < histogram.length; i++) {
+            if (histogram[i] > histogram[background]) {
+                background = i;
+            }
+        }
+        long ink = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            if (Math.abs(i - background) > INK_THRESHOLD) {
+                ink += histogram[i];
+            }
+        }
+        return (double) ink / ((long) gray.getWidth() * gray.getHeight());
+    }
+
+    /**
+     * @return a 64 bit hash in which each bit tells whether a cell of an 8x9 grid of the image is brighter on average than its right neighbour
+     */
+    static long getDifferenceHash(BufferedImage gray) {
+        double[][] cells = new double[8][9];
+        int width = gray.getWidth();
+        int height = gray.getHeight();
+        for (int row = 0; row < 8; row++) {
+            int y0 = row * height / 8;
+            int y1 = Math.max(y0 + 1, (row + 1) * height / 8);
+            for (int column = 0; column < 9; column++) {
+                int x0 = column * width / 9;
+                int x1 = Math.max(x0 + 1, (column + 1) * width / 9);
+                long sum = 0;
+                int count = 0;
+                for (int y = y0; y < y1 && y < height; y++) {
+                    for (int x = x0; x < x1 && x < width; x++) {
+                        sum += gray.getRaster().getSample(x, y, 0);
+                        count++;
+                    }
+                }
+                cells[row][column] = count == 0 ? 0 : (double) sum / count;
+            }
+        }
+        long hash = 0;
+        for (int row = 0; row < 8; row++) {
+            for (int column = 0; column < 8; column++) {
+                hash <<= 1;
+                if (cells[row][column] > cells[row][column + 1]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Replace the image of a blank page with a bilevel version, which needs a fraction of the space. Tiff images are written with CCITT group 4
+     * compression. The resolution of the original image is kept. Formats which do not support bilevel images are left unchanged
+     * 
+     * @param imageFile the image file to replace
+     * @param digest receives the bytes of the new image while it is written. May be null
+     * @return true if the image was replaced
+     * @throws IOException
+     */
+    public static boolean writeBilevel(File imageFile, MessageDigest digest) throws IOException {
+        String format = FilenameUtils.getExtension(imageFile.getName()).toLowerCase(Locale.ROOT);
+        String compression;
+        switch (format) {
+            case "tif":
+            case "tiff":
+                format = "tiff";
+                compression = "CCITT T.6";
+                break;
+            case "png":
+                compression = null;
+                break;
+            default:
+                return false;
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            return false;
+        }
+        BufferedImage image;
+        double[] pixelSize;
+        try (ImageInputStream in = ImageIO.createImageInputStream(imageFile)) {
+            Iterator<ImageReader> readers = in == null ? Collections.emptyIterator() : ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return false;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in);
+                image = reader.read(0);
+                pixelSize = getPixelSize(reader.getImageMetadata(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+        BufferedImage bilevel = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D g = bilevel.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+
+        ImageWriter writer = writers.next();
+        Path tempFile = imageFile.toPath().resolveSibling("." + imageFile.getName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(tempFile);
+                ImageOutputStream out = new MemoryCacheImageOutputStream(digest == null ? file : new DigestOutputStream(file, digest))) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (compression != null) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionType(compression);
+            }
+            writer.setOutput(out);
+            IIOMetadata metadata = pixelSize == null ? null : StreamingImageWriter.getMetadata(writer, bilevel, param, pixelSize[0], pixelSize[1]);
+            writer.write(null, new IIOImage(bilevel, null, metadata), param);
+        } finally {
+            writer.dispose();
+        }
+        Files.move(tempFile, imageFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Get the size of a pixel from the standard metadata of an image
+     * 
+     * @param metadata the metadata of the image. May be null
+     * @return the width and height of a pixel in millimeters or null if the image has no resolution
+     */
+    private static double[] getPixelSize(IIOMetadata metadata) {
+        if (metadata == null || !metadata.isStandardMetadataFormatSupported()) {
+            return null;
+        }
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(IIOMetadataFormatImpl.standardMetadataFormatName);
+        NodeList horizontal = root.getElementsByTagName("HorizontalPixelSize");
+        NodeList vertical = root.getElementsByTagName("VerticalPixelSize");
+        if (horizontal.getLength() == 0 || vertical.getLength() == 0) {
+            return null;
+        }
+        try {
+            return new double[] { Double.parseDouble(((IIOMetadataNode) horizontal.item(0)).getAttribute("value")),
+                    Double.parseDouble(((IIOMetadataNode) vertical.item(0)).getAttribute("value")) };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the results of all analyzed pages in page order
+     */
+    public List<PageInfo> getPages() {
+        return Collections.unmodifiableList(pages);
+    }
+
+    /**
+     * Write a report listing the result for each page
+     * 
+     * @param reportFile the file to write
+     * @throws IOException
+     */
+    public void writeReport(Path reportFile) throws IOException {
+        List<String> lines = new ArrayList<>(pages.size() + 1);
+        lines.add("file;status;inkRatio;duplicateOf");
+        for (PageInfo page : pages) {
+            lines.add(String.format(Locale.ROOT, "%s;%s;%.5f;%s", page.getFileName(), page.getStatus(), page.getInkRatio(),
+                    page.getDuplicateOf() == null ? "" : page.getDuplicateOf()));
+        }
+        Files.write(reportFile, lines, StandardCharsets.UTF_8);
+        logger.debug("Wrote page report " + reportFile);
+    }
+
+    public static class PageInfo {
+
+        private final String fileName;
+        private final double inkRatio;
+        private final long hash;
+        private final boolean blank;
+        private final String duplicateOf;
+
+        PageInfo(String fileName, double inkRatio, long hash, boolean blank, String duplicateOf) {
+            this.fileName = fileName;
+            this.inkRatio = inkRatio;
+            this.hash = hash;
+            this.blank = blank;
+            this.duplicateOf = duplicateOf;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public double getInkRatio() {
+            return inkRatio;
+        }
+
+        public boolean isBlank() {
+            return blank;
+        }
+
+        public boolean isDuplicate() {
+            return duplicateOf != null;
+        }
+
+        /**
+         * @return the name of the image file of the earlier page this page duplicates, or null
+         */
+        public String getDuplicateOf() {
+            return duplicateOf;
+        }
+
+        public String getStatus() {
+            if (blank) {
+                return "blank";
+            } else if (duplicateOf != null) {
+                return "duplicate";
+            } else {
+                return "content";
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Reduces the size of single page pdf files. A page pdf split from a larger document usually contains complete copies of all fonts and
+ * resources it shares with other pages. The optimizer rewrites each page file with external tools:
+ * <ul>
+ * <li>'ghostscript' rewrites the page with the pdfwrite device, which subsets all fonts to the glyphs used on the page, drops unused resources
+ * and, with ghostscript 10.02 or newer, writes compressed object streams</li>
+ * <li>'qpdf' removes unreferenced resources and writes compressed object streams without otherwise changing the page content</li>
+ * </ul>
+ * A page file is only replaced if the optimized file is smaller. The intermediate files are written into a temporary folder, so only complete page
+ * files appear in the destination folder. If a page cannot be optimized, it is kept as it is.
+ */
+public class PagePdfOptimizer {
+
+    private static final Logger logger = Logger.getLogger(PagePdfOptimizer.class);
+
+    private static final long TIMEOUT_SECONDS = 300;
+    /** qpdf exits with code 3 if it succeeded with warnings */
+    private static final Set<Integer> SUCCESS_CODES = Set.of(0, 3);
+
+    private final List<String> tools;
+    private final int threads;
+    private final File tempFolder;
+
+    private final AtomicLong bytesBefore = new AtomicLong();
+    private final AtomicLong bytesAfter = new AtomicLong();
+
+    /**
+     * @param tools the tools to apply to each page in the given order. Either 'ghostscript' or 'qpdf'
+     * @param threads the number of pages to optimize in parallel
+     * @param tempFolder the folder for the intermediate files
+     */
+    public PagePdfOptimizer(List<String> tools, int threads, File tempFolder) {
+        this.tools = tools;
+        this.threads = Math.max(1, threads);
+        this.tempFolder = tempFolder;
+    }
+
+    /**
+     * Optimize the given page pdf files in place. Pages which cannot be optimized are logged and kept as they are
+     * 
+     * @param pageFiles the page pdf files
+     * @return the page files which could not be optimized
+     * @throws IOException if the temporary folder cannot be created
+     * @throws InterruptedException
+     */
+    public List<File> optimize(List<File> pageFiles) throws IOException, InterruptedException {
+        Path workFolder = Files.createTempDirectory(tempFolder.toPath(), "pdf_optimize_");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>(pageFiles.size());
+            for (File pageFile : pageFiles) {
+                results.add(executor.submit(() -> {
+                    optimize(pageFile.toPath(), workFolder);
+                    return null;
+                }));
+            }
+            List<File> failedPages = new ArrayList<>();
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException e) {
+                    logger.warn("Cannot optimize page pdf " + pageFiles.get(i) + ", keeping it unchanged: " + e.getCause());
+                    failedPages.add(pageFiles.get(i));
+                }
+            }
+            return failedPages;
+        } finally {
+            executor.shutdownNow();
+            FileUtils.deleteQuietly(workFolder.toFile());
+        }
+    }
+
+    private void optimize(Path pageFile, Path workFolder) throws IOException, InterruptedException {
+        long originalSize = Files.size(pageFile);
+        Path current = pageFile;
+        List<Path> tempFiles = new ArrayList<>();
+        try {
+            for (int i = 0; i < tools.size(); i++) {
+                Path optimized = workFolder.resolve(pageFile.getFileName() + "." + i + ".pdf");
+                tempFiles.add(optimized);
+                ExternalCommand.run(getCommand(tools.get(i), current, optimized), TIMEOUT_SECONDS, SUCCESS_CODES);
+                current = optimized;
+            }
+            long optimizedSize = Files.size(current);
+            if (optimizedSize < originalSize) {
+                replace(current, pageFile);
+            } else {
+                optimizedSize = originalSize;
+            }
+            bytesBefore.addAndGet(originalSize);
+            bytesAfter.addAndGet(optimizedSize);
+        } finally {
+            for (Path tempFile : tempFiles) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    /**
+     * Replace the page file by the optimized file. The temporary folder may be on another file system, in which case the file cannot be moved
+     * atomically
+     */
+    private static void replace(Path optimized, Path pageFile) throws IOException {
+        try {
+            Files.move(optimized, pageFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(optimized, pageFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Get the call of a tool which reads the input file and writes the optimized file
+     * 
+     * @param tool the name of the tool
+     * @param input the page file to optimize
+     * @param output the file to write
+     * @return the executable followed by its arguments
+     */
+    protected List<String> getCommand(String tool, Path input, Path output) {
+        switch (tool) {
+            case "qpdf":
+                return List.of("qpdf", "--object-streams=generate", "--compress-streams=y", "--recompress-flate",
+                        "--remove-unreferenced-resources=yes", input.toString(), output.toString());
+            case "ghostscript":
+                return List.of("gs", "-q", "-dNOPAUSE", "-dBATCH", "-dSAFER", "-sDEVICE=pdfwrite", "-dCompatibilityLevel=1.5",
+                        "-dSubsetFonts=true", "-dCompressFonts=true", "-dDetectDuplicateImages=true", "-dPassThroughJPEGImages=true",
+                        "-dPassThroughJPXImages=true", "-dAutoRotatePages=/None", "-dWriteObjStms=true", "-dWriteXRefStm=true",
+                        "-sOutputFile=" + output, input.toString());
+            default:
+                throw new IllegalArgumentException("Unknown pdf optimization tool " + tool);
+        }
+    }
+
+    /**
+     * @return the total size of all page files before optimization
+     */
+    public long getBytesBefore() {
+        return bytesBefore.get();
+    }
+
+    /**
+     * @return the total size of all page files after optimization
+     */
+    public long getBytesAfter() {
+        return bytesAfter.get();
+    }
+
+    public String getReport() {
+        return "Optimized page pdfs from " + bytesBefore.get() + " to " + bytesAfter.get() + " bytes using " + String.join(", ", tools);
+    }
+}
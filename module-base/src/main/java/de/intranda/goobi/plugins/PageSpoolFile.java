@@ -0,0 +1,108 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A {@link PageCompletionListener} appending a line for each event to a local spool file, which later processing steps can follow like a queue.
+ * The fields of each line are separated by tabs:
+ * 
+ * <pre>
+ * {processId}  {stage}     {page}           {file}
+ * {processId}  FINISHED    {numberOfPages}
+ * {processId}  FAILED                       {reason}
+ * </pre>
+ * 
+ * Each line is flushed as soon as it is written.
+ */
+public class PageSpoolFile implements PageCompletionListener, AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(PageSpoolFile.class);
+
+    public static final String FINISHED = "FINISHED";
+    public static final String FAILED = "FAILED";
+
+    private final Path file;
+    private final BufferedWriter writer;
+
+    /**
+     * Open the spool file for appending. It is created if it does not exist
+     * 
+     * @param file the spool file
+     * @throws IOException if the file cannot be opened
+     */
+    public PageSpoolFile(Path file) throws IOException {
+        this.file = file;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void pageCompleted(PageCompletedEvent event) {
+        writeLine(event.getProcessId() + "\t" + event.getStage() + "\t" + event.getPage() + "\t" + event.getFile().getAbsolutePath());
+    }
+
+    @Override
+    public void extractionFinished(Integer processId, int numberOfPages) {
+        writeLine(processId + "\t" + FINISHED + "\t" + numberOfPages + "\t");
+    }
+
+    @Override
+    public void extractionFailed(Integer processId, Throwable cause) {
+        writeLine(processId + "\t" + FAILED + "\t\t" + String.valueOf(cause).replaceAll("\\s+", " "));
+    }
+
+    private synchronized void writeLine(String line) {
+        try {
+            writer.write(line);
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            logger.warn("Cannot write to page spool file " + file + ": " + e.toString());
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
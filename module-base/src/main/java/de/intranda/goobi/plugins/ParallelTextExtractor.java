@@ -0,0 +1,237 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.log4j.Logger;
+
+import de.intranda.digiverso.pdf.PDFConverter;
+import de.intranda.digiverso.pdf.exception.PDFReadException;
+import de.intranda.digiverso.pdf.exception.PDFWriteException;
+
+/**
+ * Extracts the full text and ALTO files of a pdf file page by page on a fork/join pool. The pdf file is split into single page pdfs once, so each
+ * worker only has to load the small document of its page instead of the complete pdf file. If the single page pdfs are written anyway, they can be
+ * handed over with {@link #usePagePdfs(List)} instead. The page range is split recursively between the
+ * workers and the results are joined in page order. Each page is written with its own counter, so the files have the same names as when
+ * extracting the complete pdf file at once.
+ * <p>
+ * The pdf converter does not document whether it may be called concurrently. Each worker therefore loads its own single page pdf, so no document
+ * is shared between threads. The names of the files come from the static file naming strategy of the converter, which is only read during the
+ * extraction. Since another extraction in the same application may replace it at any time, the name of each written file is checked against the
+ * expected name of its page.
+ */
+public class ParallelTextExtractor implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(ParallelTextExtractor.class);
+
+    private static final int PAGES_PER_TASK = 4;
+
+    private final File pdfFile;
+    private final File tempFolder;
+    private final String nameFormat;
+    private final ForkJoinPool pool;
+    private Path splitFolder = null;
+    private List<File> pagePdfs = null;
+
+    /**
+     * @param pdfFile the pdf file to extract
+     * @param tempFolder the folder in which the single page pdfs are created
+     * @param threads the parallelism of the fork/join pool
+     * @param nameFormat the format of the file names without extension, which the naming strategy of the pdf converter creates from the page counter
+     */
+    public ParallelTextExtractor(File pdfFile, File tempFolder, int threads, String nameFormat) {
+        this.pdfFile = pdfFile;
+        this.tempFolder = tempFolder;
+        this.nameFormat = nameFormat;
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+    }
+
+    /**
+     * Use single page pdfs which were already written instead of splitting the pdf file again. These files are not deleted on {@link #close()}.
+     * Has no effect if the pdf file was already split
+     * 
+     * @param pagePdfs the single page pdfs of the pdf file in page order
+     */
+    public synchronized void usePagePdfs(List<File> pagePdfs) {
+        if (this.pagePdfs == null) {
+            this.pagePdfs = new ArrayList<>(pagePdfs);
+        }
+    }
+
+    /**
+     * Write a text file for each page
+     * 
+     * @param outputFolder the folder to write to
+     * @param encoding the encoding of the text files
+     * @param counter the counter of the first page
+     * @return the text files in page order
+     * @throws PDFReadException
+     * @throws PDFWriteException also if a file was not named after its page
+     * @throws IOException if the pdf file cannot be split into pages
+     */
+    public List<File> writeFullText(File outputFolder, String encoding, int counter) throws PDFReadException, PDFWriteException, IOException {
+        return writePages((pagePdf, pageCounter) -> PDFConverter.writeFullText(pagePdf, outputFolder, encoding, pageCounter), counter);
+    }
+
+    /**
+     * Write an ALTO file for each page
+     * 
+     * @param outputFolder the folder to write to
+     * @param imagesOfPage provides the images to use for the page with the given counter, if any
+     * @param counter the counter of the first page
+     * @return the ALTO files in page order
+     * @throws PDFReadException
+     * @throws PDFWriteException also if a file was not named after its page
+     * @throws IOException if the pdf file cannot be split into pages
+     */
+    public List<File> writeAltoFiles(File outputFolder, IntFunction<List<File>> imagesOfPage, int counter)
+            throws PDFReadException, PDFWriteException, IOException {
+        return writePages((pagePdf, pageCounter) -> PDFConverter.writeAltoFiles(pagePdf, outputFolder, imagesOfPage.apply(pageCounter), false,
+                pageCounter), counter);
+    }
+
+    private List<File> writePages(PageWriter writer, int counter) throws PDFReadException, PDFWriteException, IOException {
+        List<File> pages = getPagePdfs();
+        long start = System.currentTimeMillis();
+        try {
+            List<File> files = pool.invoke(new PageRangeTask(writer, nameFormat, pages, counter, 0, pages.size()));
+            logger.debug("Extracted " + pages.size() + " pages of " + pdfFile + " with " + pool.getParallelism() + " threads in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            return files;
+        } catch (PageException e) {
+            if (e.getCause() instanceof PDFReadException) {
+                throw (PDFReadException) e.getCause();
+            }
+            throw (PDFWriteException) e.getCause();
+        }
+    }
+
+    /**
+     * Split the pdf file into single page pdfs, once for all stages, unless they were handed over
+     */
+    private synchronized List<File> getPagePdfs() throws PDFReadException, PDFWriteException, IOException {
+        if (pagePdfs == null) {
+            splitFolder = Files.createTempDirectory(tempFolder.toPath(), "pdf_pages_");
+            pagePdfs = PDFConverter.writeSinglePagePdfs(pdfFile, splitFolder.toFile(), 1);
+        }
+        return pagePdfs;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+        if (splitFolder != null) {
+            FileUtils.deleteQuietly(splitFolder.toFile());
+        }
+    }
+
+    @FunctionalInterface
+    private interface PageWriter {
+        List<File> write(File pagePdf, int counter) throws PDFReadException, PDFWriteException;
+    }
+
+    /**
+     * Writes the pages of a range, splitting it into two halves as long as it is larger than {@link #PAGES_PER_TASK}
+     */
+    private static class PageRangeTask extends RecursiveTask<List<File>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient PageWriter writer;
+        private final String nameFormat;
+        private final transient List<File> pagePdfs;
+        private final int counter;
+        private final int from;
+        private final int to;
+
+        private PageRangeTask(PageWriter writer, String nameFormat, List<File> pagePdfs, int counter, int from, int to) {
+            this.writer = writer;
+            this.nameFormat = nameFormat;
+            this.pagePdfs = pagePdfs;
+            this.counter = counter;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<File> compute() {
+            if (to - from <= PAGES_PER_TASK) {
+                List<File> files = new ArrayList<>();
+                for (int page = from; page < to; page++) {
+                    try {
+                        files.addAll(checkNames(writer.write(pagePdfs.get(page), counter + page), counter + page));
+                    } catch (PDFReadException | PDFWriteException e) {
+                        throw new PageException(e);
+                    }
+                }
+                return files;
+            }
+            int middle = (from + to) >>> 1;
+            PageRangeTask first = new PageRangeTask(writer, nameFormat, pagePdfs, counter, from, middle);
+            first.fork();
+            List<File> second = new PageRangeTask(writer, nameFormat, pagePdfs, counter, middle, to).compute();
+            List<File> files = new ArrayList<>(first.join());
+            files.addAll(second);
+            return files;
+        }
+
+        private List<File> checkNames(List<File> files, int pageCounter) throws PDFWriteException {
+            String expectedName = String.format(nameFormat, pageCounter);
+            for (File file : files) {
+                if (!expectedName.equals(FilenameUtils.getBaseName(file.getName()))) {
+                    throw new PDFWriteException("Expected the files of page " + pageCounter + " to be named " + expectedName + ", but found " + file
+                            + ". The file naming strategy of the pdf converter may have been replaced during the extraction");
+                }
+            }
+            return files;
+        }
+    }
+
+    /**
+     * Carries the checked exceptions of the pdf converter out of the fork/join tasks
+     */
+    private static class PageException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private PageException(Exception cause) {
+            super(cause);
+        }
+    }
+}
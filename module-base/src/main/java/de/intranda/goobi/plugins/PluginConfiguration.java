@@ -0,0 +1,504 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import de.intranda.goobi.exceptions.PluginConfigurationException;
+
+/**
+ * An immutable snapshot of the plugin configuration for one project and step. All values are read once from the xml configuration when the
+ * snapshot is created, so reading them during the extraction costs no more than a field access. Snapshots are cached for each project and step and
+ * are only compiled again if the modification time of the configuration file changes.
+ */
+public final class PluginConfiguration {
+
+    private static final Logger logger = Logger.getLogger(PluginConfiguration.class);
+
+    private static final Map<String, CachedConfiguration> cache = new ConcurrentHashMap<>();
+
+    private final String sourceFolder;
+    private final String targetFolder;
+    private final boolean failOnMissingPdf;
+    private final boolean overwriteExistingData;
+    private final String fileNamingStrategy;
+    private final boolean useOutputWriter;
+    private final int outputWriterThreads;
+    private final int outputWriterSyncBatchSize;
+    private final boolean parallelText;
+    private final int parallelTextThreads;
+    private final String pageSpoolFile;
+    private final boolean writeChecksums;
+    private final String checksumsDestination;
+    private final boolean writeMets;
+    private final boolean failOnMetsError;
+    private final String docTypeParent;
+    private final String docTypeChildren;
+    private final String tocEngine;
+    private final int tocMaxDepth;
+    private final boolean tocFlatten;
+    private final boolean writeImages;
+    private final boolean failOnImagesError;
+    private final String imagesDestination;
+    private final int imageResolution;
+    private final String imageFormat;
+    private final String imageGenerator;
+    private final List<String[]> imageGeneratorParams;
+    private final List<String> autoGenerators;
+    private final int autoGeneratorMinRuns;
+    private final double autoGeneratorExploration;
+    private final String autoGeneratorStatisticsFile;
+    private final boolean streamImages;
+    private final int streamingThreads;
+    private final boolean superviseImageGeneration;
+    private final String supervisionFallbackGenerator;
+    private final int supervisionFallbackResolution;
+    private final int supervisionChunkSize;
+    private final long supervisionPageTimeout;
+    private final boolean detectPageContent;
+    private final double blankThreshold;
+    private final int duplicateDistance;
+    private final boolean bilevelBlankPages;
+    private final boolean writePlainText;
+    private final boolean failOnPlainTextError;
+    private final String plainTextDestination;
+    private final boolean writeAltoFiles;
+    private final boolean failOnAltoError;
+    private final String altoDestination;
+    private final boolean writeSinglePagePdfs;
+    private final boolean failOnSinglePagePdfError;
+    private final String singlePagePdfDestination;
+    private final boolean optimizeSinglePagePdfs;
+    private final List<String> optimizationTools;
+    private final int optimizationThreads;
+    private final String fulltextPropertyName;
+    private final String fulltextPropertyTrueValue;
+    private final String fulltextPropertyFalseValue;
+
+    /**
+     * Compile a snapshot of the given configuration
+     * 
+     * @param config the configuration for a project and step
+     */
+    public PluginConfiguration(Configuration config) {
+        this.sourceFolder = config.getString("sourceFolder", "{origpath}");
+        this.targetFolder = config.getString("targetFolder", "{importpath}");
+        this.failOnMissingPdf = config.getBoolean("validation.failOnMissingPDF", true);
+        this.overwriteExistingData = config.getBoolean("overwriteExistingData", true);
+        this.fileNamingStrategy = config.getString("fileNaming.strategy", "CONSECUTIVE_COUNT");
+        this.useOutputWriter = config.getBoolean("outputWriter.enabled", false);
+        this.outputWriterThreads = config.getInt("outputWriter.threads", 4);
+        this.outputWriterSyncBatchSize = config.getInt("outputWriter.syncBatchSize", 50);
+        this.parallelText = config.getBoolean("parallelText.enabled", false);
+        this.parallelTextThreads = config.getInt("parallelText.threads", 4);
+        this.pageSpoolFile = config.getString("pageEvents.spoolFile", "");
+        this.writeChecksums = config.getBoolean("checksums.enabled", false);
+        this.checksumsDestination = config.getString("checksums.destination", "{processpath}/checksums");
+        this.writeMets = config.getBoolean("mets.write", true);
+        this.failOnMetsError = config.getBoolean("mets.failOnError", true);
+        this.docTypeParent = config.getString("mets.docType.parent", config.getString("docType.parent", ""));
+        this.docTypeChildren = config.getString("mets.docType.children", config.getString("docType.children", ""));
+        this.tocEngine = config.getString("mets.toc.engine", "library");
+        this.tocMaxDepth = config.getInt("mets.toc.maxDepth", 0);
+        this.tocFlatten = config.getBoolean("mets.toc.flatten", true);
+        this.writeImages = config.getBoolean("images.write", true);
+        this.failOnImagesError = config.getBoolean("images.failOnError", true);
+        this.imagesDestination = config.getString("images.destination", "{origpath}");
+        this.imageResolution = config.getInt("images.resolution", 300);
+        this.imageFormat = config.getString("images.format", "tif");
+        this.imageGenerator = config.getString("images.generator", "ghostscript");
+        this.imageGeneratorParams = getGeneratorParams(config);
+        this.autoGenerators = getStringList(config, "images.auto.generator", "ghostscript", "pdftoppm");
+        this.autoGeneratorMinRuns = config.getInt("images.auto.minRuns", 3);
+        this.autoGeneratorExploration = config.getDouble("images.auto.exploration", 0.1);
+        this.autoGeneratorStatisticsFile = config.getString("images.auto.statisticsFile", "");
+        this.streamImages = config.getBoolean("images.streaming.enabled", false);
+        this.streamingThreads = config.getInt("images.streaming.threads", 4);
+        this.superviseImageGeneration = config.getBoolean("images.supervision.enabled", false);
+        this.supervisionFallbackGenerator = config.getString("images.supervision.fallbackGenerator", "");
+        this.supervisionFallbackResolution = config.getInt("images.supervision.fallbackResolution", 150);
+        this.supervisionChunkSize = config.getInt("images.supervision.chunkSize", 10);
+        this.supervisionPageTimeout = config.getLong("images.supervision.pageTimeout", 120);
+        this.detectPageContent = writeImages && config.getBoolean("images.pageDetection.enabled", false);
+        this.blankThreshold = config.getDouble("images.pageDetection.blankThreshold", 0.001);
+        this.duplicateDistance = config.getInt("images.pageDetection.duplicateDistance", 4);
+        this.bilevelBlankPages = config.getBoolean("images.pageDetection.bilevelBlankPages", false);
+        this.writePlainText = config.getBoolean("plaintext.write", true);
+        this.failOnPlainTextError = config.getBoolean("plaintext.failOnError", true);
+        this.plainTextDestination = config.getString("plaintext.destination", "{processpath}/ocr/{processtitle}_txt");
+        this.writeAltoFiles = config.getBoolean("alto.write", true);
+        this.failOnAltoError = config.getBoolean("alto.failOnError", true);
+        this.altoDestination = config.getString("alto.destination", "{processpath}/ocr/{processtitle}_alto");
+        this.writeSinglePagePdfs = config.getBoolean("pagePdfs.write", true);
+        this.failOnSinglePagePdfError = config.getBoolean("pagePdfs.failOnError", true);
+        this.singlePagePdfDestination = config.getString("pagePdfs.destination", "{processpath}/ocr/{processtitle}_pdf");
+        this.optimizeSinglePagePdfs = config.getBoolean("pagePdfs.optimization.enabled", false);
+        this.optimizationTools = getStringList(config, "pagePdfs.optimization.tool", "ghostscript");
+        this.optimizationThreads = config.getInt("pagePdfs.optimization.threads", 4);
+        this.fulltextPropertyName = config.getString("properties.fulltext.name", "");
+        this.fulltextPropertyTrueValue = config.getString("properties.fulltext.value[@exists='true']", "TRUE");
+        this.fulltextPropertyFalseValue = config.getString("properties.fulltext.value[@exists='false']", "FALSE");
+    }
+
+    /**
+     * Get the configuration snapshot for the given project and step. A cached snapshot is returned unless the configuration file has been modified
+     * since it was compiled. If the modification time of the configuration file cannot be read, the configuration is read again and not cached
+     * 
+     * @param projectName the name of the project
+     * @param stepName the name of the step
+     * @param configFile the plugin configuration file
+     * @param loader reads the configuration for the project and step if no valid cached snapshot exists
+     * @return the configuration snapshot
+     * @throws PluginConfigurationException if the configuration cannot be read
+     */
+    public static PluginConfiguration getInstance(String projectName, String stepName, Path configFile, ConfigurationLoader loader)
+            throws PluginConfigurationException {
+        String key = projectName + "|" + stepName;
+        FileTime modified = getModificationTime(configFile);
+        if (modified == null) {
+            cache.remove(key);
+            return new PluginConfiguration(loader.load());
+        }
+        CachedConfiguration cached = cache.get(key);
+        if (cached != null && cached.modified.equals(modified)) {
+            return cached.configuration;
+        }
+        PluginConfiguration configuration = new PluginConfiguration(loader.load());
+        cache.put(key, new CachedConfiguration(configuration, modified));
+        logger.debug("Compiled plugin configuration for project " + projectName + " and step " + stepName);
+        return configuration;
+    }
+
+    /**
+     * @return the modification time of the configuration file or null if it cannot be read
+     */
+    private static FileTime getModificationTime(Path configFile) {
+        try {
+            return Files.getLastModifiedTime(configFile);
+        } catch (IOException e) {
+            logger.debug("Cannot read modification time of " + configFile + ", the configuration is not cached: " + e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Remove all cached snapshots
+     */
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    private static List<String> getStringList(Configuration config, String key, String... defaultValues) {
+        String[] values = config.getStringArray(key);
+        return values.length == 0 ? List.of(defaultValues) : List.of(values);
+    }
+
+    /**
+     * Read the generator parameters as pairs of the value of their generator attribute, which may be empty, and the parameter
+     */
+    private static List<String[]> getGeneratorParams(Configuration config) {
+        String[] values = config.getStringArray("images.generatorParameter");
+        List<String[]> params = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            String generator = config.getString("images.generatorParameter(" + i + ")[@generator]", "");
+            params.add(new String[] { generator, values[i] });
+        }
+        return params;
+    }
+
+    public String getSourceFolder() {
+        return sourceFolder;
+    }
+
+    public String getTargetFolder() {
+        return targetFolder;
+    }
+
+    public boolean isFailOnMissingPdf() {
+        return failOnMissingPdf;
+    }
+
+    public boolean isOverwriteExistingData() {
+        return overwriteExistingData;
+    }
+
+    public String getFileNamingStrategy() {
+        return fileNamingStrategy;
+    }
+
+    public boolean isUseOutputWriter() {
+        return useOutputWriter;
+    }
+
+    public int getOutputWriterThreads() {
+        return outputWriterThreads;
+    }
+
+    public int getOutputWriterSyncBatchSize() {
+        return outputWriterSyncBatchSize;
+    }
+
+    public boolean isParallelText() {
+        return parallelText;
+    }
+
+    public int getParallelTextThreads() {
+        return parallelTextThreads;
+    }
+
+    public String getPageSpoolFile() {
+        return pageSpoolFile;
+    }
+
+    public boolean isWriteChecksums() {
+        return writeChecksums;
+    }
+
+    public String getChecksumsDestination() {
+        return checksumsDestination;
+    }
+
+    public boolean isWriteMets() {
+        return writeMets;
+    }
+
+    public boolean isFailOnMetsError() {
+        return failOnMetsError;
+    }
+
+    public String getDocTypeParent() {
+        return docTypeParent;
+    }
+
+    public String getDocTypeChildren() {
+        return docTypeChildren;
+    }
+
+    public String getTocEngine() {
+        return tocEngine;
+    }
+
+    public int getTocMaxDepth() {
+        return tocMaxDepth;
+    }
+
+    public boolean isTocFlatten() {
+        return tocFlatten;
+    }
+
+    public boolean isWriteImages() {
+        return writeImages;
+    }
+
+    public boolean isFailOnImagesError() {
+        return failOnImagesError;
+    }
+
+    public String getImagesDestination() {
+        return imagesDestination;
+    }
+
+    public int getImageResolution() {
+        return imageResolution;
+    }
+
+    public String getImageFormat() {
+        return imageFormat;
+    }
+
+    public String getImageGenerator() {
+        return imageGenerator;
+    }
+
+    /**
+     * @param generator the generator to call
+     * @return the configured parameters without generator attribute and those whose generator attribute matches the given generator
+     */
+    public String[] getImageGeneratorParams(String generator) {
+        List<String> params = new ArrayList<>();
+        for (String[] param : imageGeneratorParams) {
+            if (StringUtils.isBlank(param[0]) || param[0].equalsIgnoreCase(generator)) {
+                params.add(param[1]);
+            }
+        }
+        return params.toArray(new String[0]);
+    }
+
+    public boolean isAutoImageGenerator() {
+        return "auto".equalsIgnoreCase(imageGenerator);
+    }
+
+    public List<String> getAutoGenerators() {
+        return autoGenerators;
+    }
+
+    public int getAutoGeneratorMinRuns() {
+        return autoGeneratorMinRuns;
+    }
+
+    public double getAutoGeneratorExploration() {
+        return autoGeneratorExploration;
+    }
+
+    public String getAutoGeneratorStatisticsFile() {
+        return autoGeneratorStatisticsFile;
+    }
+
+    public boolean isStreamImages() {
+        return streamImages;
+    }
+
+    public int getStreamingThreads() {
+        return streamingThreads;
+    }
+
+    public boolean isSuperviseImageGeneration() {
+        return superviseImageGeneration;
+    }
+
+    public String getSupervisionFallbackGenerator() {
+        return supervisionFallbackGenerator;
+    }
+
+    public int getSupervisionFallbackResolution() {
+        return supervisionFallbackResolution;
+    }
+
+    public int getSupervisionChunkSize() {
+        return supervisionChunkSize;
+    }
+
+    public long getSupervisionPageTimeout() {
+        return supervisionPageTimeout;
+    }
+
+    public boolean isDetectPageContent() {
+        return detectPageContent;
+    }
+
+    public double getBlankThreshold() {
+        return blankThreshold;
+    }
+
+    public int getDuplicateDistance() {
+        return duplicateDistance;
+    }
+
+    public boolean isBilevelBlankPages() {
+        return bilevelBlankPages;
+    }
+
+    public boolean isWritePlainText() {
+        return writePlainText;
+    }
+
+    public boolean isFailOnPlainTextError() {
+        return failOnPlainTextError;
+    }
+
+    public String getPlainTextDestination() {
+        return plainTextDestination;
+    }
+
+    public boolean isWriteAltoFiles() {
+        return writeAltoFiles;
+    }
+
+    public boolean isFailOnAltoError() {
+        return failOnAltoError;
+    }
+
+    public String getAltoDestination() {
+        return altoDestination;
+    }
+
+    public boolean isWriteSinglePagePdfs() {
+        return writeSinglePagePdfs;
+    }
+
+    public boolean isFailOnSinglePagePdfError() {
+        return failOnSinglePagePdfError;
+    }
+
+    public String getSinglePagePdfDestination() {
+        return singlePagePdfDestination;
+    }
+
+    public boolean isOptimizeSinglePagePdfs() {
+        return optimizeSinglePagePdfs;
+    }
+
+    public List<String> getOptimizationTools() {
+        return optimizationTools;
+    }
+
+    public int getOptimizationThreads() {
+        return optimizationThreads;
+    }
+
+    public String getFulltextPropertyName() {
+        return fulltextPropertyName;
+    }
+
+    public String getFulltextPropertyTrueValue() {
+        return fulltextPropertyTrueValue;
+    }
+
+    public String getFulltextPropertyFalseValue() {
+        return fulltextPropertyFalseValue;
+    }
+
+    /**
+     * Reads the xml configuration for a project and step
+     */
+    @FunctionalInterface
+    public interface ConfigurationLoader {
+        Configuration load() throws PluginConfigurationException;
+    }
+
+    private static class CachedConfiguration {
+
+        private final PluginConfiguration configuration;
+        private final FileTime modified;
+
+        private CachedConfiguration(PluginConfiguration configuration, FileTime modified) {
+            this.configuration = configuration;
+            this.modified = modified;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ObjIntConsumer;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataFormatImpl;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+
+import de.intranda.digiverso.pdf.exception.PDFWriteException;
+
+/**
+ * Renders the pages of a pdf file by reading the raw page bitmaps from the standard output of the image generator and encodes them into the
+ * configured image format on a pool of worker threads. The images are written directly into the destination folder, so unlike the pdf converter
+ * no temporary copy of all images is needed. The number of pages waiting to be encoded is limited, so the generator is slowed down if the
+ * workers cannot keep up. TIFF images are written with LZW compression.
+ */
+public class StreamingImageWriter implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(StreamingImageWriter.class);
+
+    /** ghostscript parameters which would redirect the page bitmaps away from the standard output */
+    private static final List<String> GHOSTSCRIPT_OUTPUT_PARAMS = List.of("-sDEVICE=", "-sOutputFile=", "-sstdout=");
+    /** pdftoppm parameters selecting another output format than netpbm */
+    private static final Set<String> PDFTOPPM_OUTPUT_PARAMS = Set.of("-png", "-jpeg", "-jpegcmyk", "-tiff", "-singlefile");
+    /** pdftoppm parameters of the other output formats, which are followed by a value */
+    private static final Set<String> PDFTOPPM_OUTPUT_OPTIONS = Set.of("-jpegopt", "-tiffcompression");
+    /** lossless compression of TIFF images, which all common TIFF readers support */
+    static final String TIFF_COMPRESSION = "LZW";
+
+    private final String generator;
+    private final int resolution;
+    private final String format;
+    private final String imageIOFormat;
+    private final String[] generatorParams;
+    private final String fileNameFormat;
+    private final ExecutorService executor;
+    private final Semaphore pendingPages;
+
+    /**
+     * @param generator the generator to call, either 'ghostscript' or 'pdftoppm'
+     * @param resolution the resolution in dpi
+     * @param format the image format and file extension, one of tif, tiff, jpg, jpeg and png
+     * @param generatorParams additional parameters for the generator
+     * @param fileNameFormat the format for the counter of each page, which is used as file name
+     * @param threads the number of threads encoding images
+     */
+    public StreamingImageWriter(String generator, int resolution, String format, String[] generatorParams, String fileNameFormat, int threads) {
+        this.generator = generator;
+        this.resolution = resolution;
+        this.format = format;
+        this.imageIOFormat = getImageIOFormat(format);
+        this.generatorParams = generatorParams == null ? new String[0] : getStreamingParams(generator, generatorParams);
+        this.fileNameFormat = fileNameFormat;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "pdf-extraction-image-encoder-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pendingPages = new Semaphore(2 * Math.max(1, threads));
+    }
+
+    /**
+     * Remove the parameters which would make the generator write its images anywhere else than as netpbm images to its standard output
+     * 
+     * @param generator the generator to call
+     * @param generatorParams the configured parameters
+     * @return the parameters which can be used for streaming
+     */
+    static String[] getStreamingParams(String generator, String[] generatorParams) {
+        boolean ghostscript = "ghostscript".equalsIgnoreCase(generator);
+        List<String> params = new ArrayList<>();
+        for (int i = 0; i < generatorParams.length; i++) {
+            String param = generatorParams[i];
+            boolean ignored;
+            if (ghostscript) {
+                ignored = "-o".equals(param) || GHOSTSCRIPT_OUTPUT_PARAMS.stream().anyMatch(param::startsWith);
+            } else {
+                ignored = PDFTOPPM_OUTPUT_PARAMS.contains(param) || PDFTOPPM_OUTPUT_OPTIONS.contains(param);
+            }
+            if (!ignored) {
+                params.add(param);
+                continue;
+            }
+            if ("-o".equals(param) || PDFTOPPM_OUTPUT_OPTIONS.contains(param)) {
+                // the value of the parameter
+                i++;
+            }
+            logger.warn("Ignoring generator parameter " + param + " which cannot be used for streaming images");
+        }
+        return params.toArray(new String[0]);
+    }
+
+    /**
+     * @return true if images of the given format can be streamed from the given generator
+     */
+    public static boolean isSupported(String generator, String format) {
+        return ("ghostscript".equalsIgnoreCase(generator) || "pdftoppm".equalsIgnoreCase(generator)) && getImageIOFormat(format) != null;
+    }
+
+    /**
+     * @return the ImageIO name of the given image format or null if it cannot be written
+     */
+    static String getImageIOFormat(String format) {
+        switch (format.toLowerCase(Locale.ROOT)) {
+            case "tif":
+            case "tiff":
+                return "tiff";
+            case "jpg":
+            case "jpeg":
+                return "jpeg";
+            case "png":
+                return "png";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get the generator call which writes all pages of the pdf file as binary netpbm images to its standard output. Messages which ghostscript
+     * would print to its standard output are redirected to the error output, so they cannot corrupt the images
+     * 
+     * @param pdfFile the pdf file to render
+     * @return the executable followed by its arguments
+     */
+    protected List<String> getCommand(File pdfFile) {
+        List<String> command = new ArrayList<>();
+        if ("ghostscript".equalsIgnoreCase(generator)) {
+            command.addAll(List.of("gs", "-q", "-dSAFER", "-dUseCropBox", "-sDEVICE=ppmraw", "-r" + resolution, "-sstdout=%stderr", "-sOutputFile=-",
+                    "-dNOPAUSE", "-dBATCH"));
+        } else {
+            command.addAll(List.of("pdftoppm", "-r", Integer.toString(resolution)));
+        }
+        command.addAll(List.of(generatorParams));
+        command.add(pdfFile.getAbsolutePath());
+        return command;
+    }
+
+    /**
+     * Write the images of all pages of the pdf file into the destination folder
+     * 
+     * @param pdfFile the pdf file to render
+     * @param destFolder the folder to write the images into
+     * @param counter the counter of the first page
+     * @return the written images in page order
+     * @throws PDFWriteException if the generator fails or an image cannot be written. Images already written are deleted in this case
+     * @throws InterruptedException
+     */
+    public List<File> writeImages(File pdfFile, File destFolder, int counter) throws PDFWriteException, InterruptedException {
+        return writeImages(pdfFile, destFolder, counter, null, null);
+    }
+
+    /**
+     * Write the images of all pages of the pdf file into the destination folder and report each image as soon as it is in place. The checksum of
+     * each image is calculated while it is encoded
+     * 
+     * @param pdfFile the pdf file to render
+     * @param destFolder the folder to write the images into
+     * @param counter the counter of the first page
+     * @param onWritten called from an encoder thread with each written image and its index in page order. May be null
+     * @param manifest receives the checksum of each written image. May be null
+     * @return the written images in page order
+     * @throws PDFWriteException if the generator fails or an image cannot be written. Images already written are deleted in this case
+     * @throws InterruptedException
+     */
+    public List<File> writeImages(File pdfFile, File destFolder, int counter, ObjIntConsumer<File> onWritten, ChecksumManifest manifest)
+            throws PDFWriteException, InterruptedException {
+        List<String> command = getCommand(pdfFile);
+        Process process;
+        try {
+            process = new ProcessBuilder(command).start();
+        } catch (IOException e) {
+            throw new PDFWriteException("Cannot start " + command.get(0) + ": " + e.toString());
+        }
+        ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+        Thread errorReader = ExternalCommand.startReader(process.getErrorStream(), errorOutput, "error-" + command.get(0));
+        List<File> files = new ArrayList<>();
+        List<Future<?>> writes = new ArrayList<>();
+        AtomicReference<Exception> writeFailure = new AtomicReference<>();
+        Process generatorProcess = process;
+        boolean success = false;
+        long start = System.currentTimeMillis();
+        try (InputStream in = process.getInputStream()) {
+            NetpbmReader reader = new NetpbmReader(in);
+            BufferedImage image;
+            while ((image = reader.read()) != null) {
+                int index = files.size();
+                File file = new File(destFolder, String.format(fileNameFormat, counter + index) + "." + format);
+                files.add(file);
+                BufferedImage page = image;
+                pendingPages.acquire();
+                writes.add(executor.submit(() -> {
+                    try {
+                        MessageDigest digest = manifest == null ? null : ChecksumManifest.createDigest();
+                        writeImage(page, file, imageIOFormat, resolution, digest);
+                        if (digest != null) {
+                            manifest.add(file.getName(), digest);
+                        }
+                        if (onWritten != null) {
+                            onWritten.accept(file, index);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // stop the generator at once, even if it is blocked writing the next page
+                        if (writeFailure.compareAndSet(null, e) && generatorProcess.isAlive()) {
+                            ExternalCommand.kill(generatorProcess.toHandle());
+                        }
+                        throw e;
+                    } finally {
+                        pendingPages.release();
+                    }
+                    return null;
+                }));
+                checkWrites(writeFailure, pdfFile);
+            }
+            checkWrites(writeFailure, pdfFile);
+            int exitCode = process.waitFor();
+            errorReader.join(TimeUnit.SECONDS.toMillis(5));
+            checkWrites(writeFailure, pdfFile);
+            if (exitCode != 0) {
+                throw new PDFWriteException(command.get(0) + " exited with code " + exitCode + ": " + errorOutput.toString(StandardCharsets.UTF_8));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+            if (files.isEmpty()) {
+                throw new PDFWriteException("No images could be created from " + pdfFile);
+            }
+            success = true;
+            logger.debug("Streamed " + files.size() + " images from " + command.get(0) + " in " + (System.currentTimeMillis() - start) + " ms");
+            return files;
+        } catch (IOException e) {
+            // the generator may have been killed because an image could not be written
+            checkWrites(writeFailure, pdfFile);
+            throw new PDFWriteException("Error reading images of " + pdfFile + " from " + command.get(0) + ": " + e.toString());
+        } catch (ExecutionException e) {
+            throw new PDFWriteException("Error writing images of " + pdfFile + ": " + e.getCause());
+        } finally {
+            if (!success) {
+                if (process.isAlive()) {
+                    ExternalCommand.kill(process.toHandle());
+                }
+                // wait for the running workers before removing their files
+                for (Future<?> write : writes) {
+                    try {
+                        write.get();
+                    } catch (ExecutionException | InterruptedException e) {
+                        logger.trace("Discarding failed image: " + e.toString());
+                    }
+                }
+                files.forEach(FileUtils::deleteQuietly);
+            }
+        }
+    }
+
+    /**
+     * Fail as soon as one of the images could not be written, instead of reading the remaining pages from the generator
+     * 
+     * @param writeFailure the first error of the workers, if any
+     * @param pdfFile the rendered pdf file
+     * @throws PDFWriteException if an image could not be written
+     */
+    private static void checkWrites(AtomicReference<Exception> writeFailure, File pdfFile) throws PDFWriteException {
+        Exception e = writeFailure.get();
+        if (e != null) {
+            throw new PDFWriteException("Error writing images of " + pdfFile + ": " + e);
+        }
+    }
+
+    /**
+     * Encode an image into a file. The image is written to a hidden file next to the destination first and then moved into place, so other tools
+     * never see an incomplete image
+     * 
+     * @param image the image to write
+     * @param file the destination file
+     * @param imageIOFormat the ImageIO name of the image format, as returned by {@link #getImageIOFormat(String)}
+     * @param resolution the resolution in dpi which is recorded in the image metadata
+     * @param digest receives all bytes written into the file. May be null
+     * @throws IOException
+     */
+    static void writeImage(BufferedImage image, File file, String imageIOFormat, int resolution, MessageDigest digest) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(imageIOFormat);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer available for " + imageIOFormat);
+        }
+        if ("jpeg".equals(imageIOFormat) && image.getType() == BufferedImage.TYPE_BYTE_BINARY) {
+            image = toGray(image);
+        }
+        ImageWriter writer = writers.next();
+        Path tempFile = file.toPath().resolveSibling("." + file.getName() + ".tmp");
+        Files.deleteIfExists(tempFile);
+        try (OutputStream fileOut = Files.newOutputStream(tempFile);
+                ImageOutputStream out = new MemoryCacheImageOutputStream(digest == null ? fileOut : new DigestOutputStream(fileOut, digest))) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("tiff".equals(imageIOFormat)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionType(TIFF_COMPRESSION);
+            }
+            writer.setOutput(out);
+            double pixelSize = 25.4 / resolution;
+            writer.write(null, new IIOImage(image, null, getMetadata(writer, image, param, pixelSize, pixelSize)), param);
+        } finally {
+            writer.dispose();
+        }
+        Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Create metadata containing the resolution of the image, which the writers store in the format specific way
+     * 
+     * @param writer the writer to create the metadata for
+     * @param image the image to write
+     * @param param the parameters for the writer
+     * @param horizontalPixelSize the width of a pixel in millimeters
+     * @param verticalPixelSize the height of a pixel in millimeters
+     * @return the metadata
+     */
+    static IIOMetadata getMetadata(ImageWriter writer, BufferedImage image, ImageWriteParam param, double horizontalPixelSize,
+            double verticalPixelSize) {
+        IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+        if (metadata == null || !metadata.isStandardMetadataFormatSupported() || metadata.isReadOnly()) {
+            return metadata;
+        }
+        IIOMetadataNode horizontal = new IIOMetadataNode("HorizontalPixelSize");
+        horizontal.setAttribute("value", Double.toString(horizontalPixelSize));
+        IIOMetadataNode vertical = new IIOMetadataNode("VerticalPixelSize");
+        vertical.setAttribute("value", Double.toString(verticalPixelSize));
+        IIOMetadataNode dimension = new IIOMetadataNode("Dimension");
+        dimension.appendChild(horizontal);
+        dimension.appendChild(vertical);
+        IIOMetadataNode root = new IIOMetadataNode(IIOMetadataFormatImpl.standardMetadataFormatName);
+        root.appendChild(dimension);
+        try {
+            metadata.mergeTree(IIOMetadataFormatImpl.standardMetadataFormatName, root);
+        } catch (IIOInvalidTreeException e) {
+            logger.trace("Cannot set the resolution of " + writer.getOriginatingProvider().getFormatNames()[0] + " images: " + e.toString());
+        }
+        return metadata;
+    }
+
+    private static BufferedImage toGray(BufferedImage image) {
+        BufferedImage gray = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = gray.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return gray;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,331 @@
+package de.intranda.goobi.plugins;
+
+
+/**
+ * This file is part of a plugin for the Goobi Application - a Workflow tool for the support of mass digitization.
+ * 
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ * 
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ * Linking this library statically or dynamically with other modules is making a combined work based on this library. Thus, the terms and conditions
+ * of the GNU General Public License cover the whole combination. As a special exception, the copyright holders of this library give you permission to
+ * link this library with independent modules to produce an executable, regardless of the license terms of these independent modules, and to copy and
+ * distribute the resulting executable under terms of your choice, provided that you also meet, for each linked independent module, the terms and
+ * conditions of the license of that module. An independent module is a module which is not derived from or based on this library. If you modify this
+ * library, you may extend this exception to your version of the library, but you are not obliged to do so. If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import de.intranda.digiverso.pdf.PDFConverter;
+import de.intranda.digiverso.pdf.exception.PDFWriteException;
+
+/**
+ * Creates images from a pdf file in chunks of pages, each of which is given a time budget. If the external generator does not finish a chunk in
+ * time, it is killed and the pages of the chunk are retried one by one, first with the configured settings, then with a fallback generator and
+ * finally with a lower resolution. Pages which could only be rendered with fallback settings or not at all are recorded as {@link DegradedPage}s
+ * instead of failing the whole document. A page which could not be rendered at all is replaced by a blank placeholder image, so the written images
+ * always correspond to the pages of the pdf file.
+ * <p>
+ * Each attempt renders into its own folder within the temporary folder, so the output of an attempt which timed out cannot be mistaken for the
+ * output of a retry. The rendered images are then named after the counter of their page.
+ */
+public class SupervisedImageWriter implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(SupervisedImageWriter.class);
+
+    /** Size of the placeholder for a missing page in inches, which is DIN A4 */
+    private static final double PLACEHOLDER_WIDTH = 8.27;
+    private static final double PLACEHOLDER_HEIGHT = 11.69;
+
+    /** The page number at the end of the base name of a rendered image */
+    private static final Pattern PAGE_NUMBER = Pattern.compile("(\\d{1,18})$");
+
+    private final String generator;
+    private final String fallbackGenerator;
+    private final int resolution;
+    private final int fallbackResolution;
+    private final String format;
+    private final String[] generatorParams;
+    private final String fileNameFormat;
+    private final File tempFolder;
+    private final int chunkSize;
+    private final long pageTimeoutSeconds;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "pdf-extraction-image-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<DegradedPage> degradedPages = new ArrayList<>();
+    private String extension;
+
+    /**
+     * @param generator the generator to use
+     * @param fallbackGenerator the generator to use for retrying single pages. If blank, the generator is used
+     * @param resolution the resolution in dpi
+     * @param fallbackResolution the resolution for the last retry of a single page
+     * @param format the image format
+     * @param generatorParams additional parameters for the generator
+     * @param fileNameFormat the format for the counter of each page, which is used as file name
+     * @param tempFolder the folder in which each attempt gets its own folder
+     * @param chunkSize the number of pages to render with one generator call
+     * @param pageTimeoutSeconds the time limit for each page of a chunk
+     */
+    public SupervisedImageWriter(String generator, String fallbackGenerator, int resolution, int fallbackResolution, String format,
+            String[] generatorParams, String fileNameFormat, File tempFolder, int chunkSize, long pageTimeoutSeconds) {
+        this.generator = generator;
+        this.fallbackGenerator = StringUtils.isBlank(fallbackGenerator) ? generator : fallbackGenerator;
+        this.resolution = resolution;
+        this.fallbackResolution = fallbackResolution;
+        this.format = format;
+        this.generatorParams = generatorParams == null ? new String[0] : generatorParams;
+        this.fileNameFormat = fileNameFormat;
+        this.tempFolder = tempFolder;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.pageTimeoutSeconds = pageTimeoutSeconds;
+        this.extension = "jpegcmyk".equalsIgnoreCase(format) ? "jpg" : format;
+    }
+
+    /**
+     * Write the images of all pages of the pdf file into the destination folder
+     * 
+     * @param pdfFile the pdf file to convert
+     * @param destFolder the folder to write the images into
+     * @param pageCount the number of pages of the pdf file
+     * @param counterStart the counter to use for the first page of the pdf file
+     * @return one image file for each page in page order. Pages listed as missing in {@link #getDegradedPages()} have a blank placeholder image
+     * @throws PDFWriteException if the placeholder for a missing page cannot be written
+     * @throws InterruptedException
+     */
+    public List<File> writeImages(File pdfFile, File destFolder, int pageCount, int counterStart) throws PDFWriteException, InterruptedException {
+        List<File> imageFiles = new ArrayList<>(pageCount);
+        for (int firstPage = 1; firstPage <= pageCount; firstPage += chunkSize) {
+            int lastPage = Math.min(firstPage + chunkSize - 1, pageCount);
+            try {
+                imageFiles.addAll(writeRange(pdfFile, destFolder, firstPage, lastPage, counterStart, generator, resolution));
+            } catch (PDFWriteException | TimeoutException e) {
+                logger.warn("Failed to create images for pages " + firstPage + " to " + lastPage + " of " + pdfFile + ": " + e.toString()
+                        + ". Retrying each page individually");
+                for (int page = firstPage; page <= lastPage; page++) {
+                    imageFiles.add(writePageWithRetries(pdfFile, destFolder, page, counterStart));
+                }
+            }
+        }
+        return imageFiles;
+    }
+
+    private File writePageWithRetries(File pdfFile, File destFolder, int page, int counterStart) throws PDFWriteException, InterruptedException {
+        List<String[]> attempts = new ArrayList<>();
+        attempts.add(new String[] { generator, Integer.toString(resolution) });
+        if (!fallbackGenerator.equals(generator)) {
+            attempts.add(new String[] { fallbackGenerator, Integer.toString(resolution) });
+        }
+        if (fallbackResolution > 0 && fallbackResolution < resolution) {
+            attempts.add(new String[] { fallbackGenerator, Integer.toString(fallbackResolution) });
+        }
+        int fileCounter = counterStart + page - 1;
+        String lastError = "";
+        for (int i = 0; i < attempts.size(); i++) {
+            String attemptGenerator = attempts.get(i)[0];
+            int attemptResolution = Integer.parseInt(attempts.get(i)[1]);
+            try {
+                List<File> files = writeRange(pdfFile, destFolder, page, page, counterStart, attemptGenerator, attemptResolution);
+                if (i > 0) {
+                    degradedPages.add(new DegradedPage(ExtractionResult.Stage.IMAGES, page, fileCounter,
+                            "rendered with " + attemptGenerator + " at " + attemptResolution + " dpi", false));
+                }
+                return files.get(0);
+            } catch (PDFWriteException | TimeoutException e) {
+                lastError = e.toString();
+                logger.warn("Attempt " + (i + 1) + " to create image for page " + page + " of " + pdfFile + " failed: " + lastError);
+            }
+        }
+        File placeholder = new File(destFolder, String.format(fileNameFormat, fileCounter) + "." + extension);
+        writePlaceholder(placeholder);
+        degradedPages.add(new DegradedPage(ExtractionResult.Stage.IMAGES, page, fileCounter,
+                "no image could be created, replaced by a blank page: " + lastError, true));
+        return placeholder;
+    }
+
+    /**
+     * Render a range of pages into a new folder and move the images into the destination folder, named after the counter of their page
+     * 
+     * @return the images of the pages in page order
+     */
+    private List<File> writeRange(File pdfFile, File destFolder, int firstPage, int lastPage, int counterStart, String rangeGenerator,
+            int rangeResolution) throws PDFWriteException, TimeoutException, InterruptedException {
+        String[] params = ArrayUtils.addAll(generatorParams, getPageRangeParams(rangeGenerator, firstPage, lastPage));
+        Integer counter = counterStart + firstPage - 1;
+        Path attemptFolder;
+        try {
+            attemptFolder = Files.createTempDirectory(tempFolder.toPath(), "pdf_images_");
+        } catch (IOException e) {
+            throw new PDFWriteException("Cannot create temporary folder in " + tempFolder + ": " + e.toString());
+        }
+        try {
+            File renderFolder = attemptFolder.resolve("images").toFile();
+            File renderTempFolder = attemptFolder.resolve("temp").toFile();
+            renderFolder.mkdir();
+            renderTempFolder.mkdir();
+            Future<List<File>> future =
+                    executor.submit(() -> render(pdfFile, renderFolder, renderTempFolder, counter, rangeResolution, rangeGenerator, params));
+            long timeout = pageTimeoutSeconds * (lastPage - firstPage + 1);
+            List<File> rendered;
+            try {
+                rendered = new ArrayList<>(timeout > 0 ? future.get(timeout, TimeUnit.SECONDS) : future.get());
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                // the generators started by PDFConverter are not accessible, so they are found by the folder of this attempt in their command line
+                int killed = ExternalCommand.killChildProcesses(attemptFolder.toAbsolutePath().toString());
+                logger.warn("Image generation for pages " + firstPage + " to " + lastPage + " of " + pdfFile + " timed out after " + timeout
+                        + " seconds. Killed " + killed + " generator processes");
+                throw e;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof PDFWriteException) {
+                    throw (PDFWriteException) e.getCause();
+                } else {
+                    throw new PDFWriteException("Error creating images from " + pdfFile + ": " + e.getCause());
+                }
+            }
+            if (rendered.size() != lastPage - firstPage + 1) {
+                throw new PDFWriteException("Expected " + (lastPage - firstPage + 1) + " images for pages " + firstPage + " to " + lastPage + " of "
+                        + pdfFile + ", but " + rendered.size() + " were created");
+            }
+            // the generators number their output by page, but pad the numbers only to the digits of the last page
+            rendered.sort(Comparator.comparingLong(SupervisedImageWriter::getPageNumber).thenComparing(File::getName));
+            List<File> files = new ArrayList<>(rendered.size());
+            for (File image : rendered) {
+                String imageExtension = FilenameUtils.getExtension(image.getName());
+                File file = new File(destFolder, String.format(fileNameFormat, counter + files.size()) + "." + imageExtension);
+                Files.move(image.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                files.add(file);
+                extension = imageExtension;
+            }
+            return files;
+        } catch (IOException e) {
+            throw new PDFWriteException("Cannot move images of pages " + firstPage + " to " + lastPage + " of " + pdfFile + " to " + destFolder
+                    + ": " + e.toString());
+        } finally {
+            FileUtils.deleteQuietly(attemptFolder.toFile());
+        }
+    }
+
+    /**
+     * Render a range of pages of the pdf file. The page range is given as part of the generator parameters
+     * 
+     * @param pdfFile the pdf file to render
+     * @param destFolder the folder to write the images into
+     * @param renderTempFolder the temporary folder for the generator
+     * @param counter the counter of the first page of the range
+     * @param rangeResolution the resolution in dpi
+     * @param rangeGenerator the generator to use
+     * @param params the generator parameters including the page range
+     * @return the written images
+     * @throws PDFWriteException
+     */
+    protected List<File> render(File pdfFile, File destFolder, File renderTempFolder, Integer counter, int rangeResolution, String rangeGenerator,
+            String[] params) throws PDFWriteException {
+        return PDFConverter.writeImages(pdfFile, destFolder, counter, rangeResolution, format, renderTempFolder, rangeGenerator, params);
+    }
+
+    private static long getPageNumber(File image) {
+        Matcher matcher = PAGE_NUMBER.matcher(FilenameUtils.getBaseName(image.getName()));
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+    /**
+     * Write a white page in the size of DIN A4 at the configured resolution
+     */
+    private void writePlaceholder(File file) throws PDFWriteException {
+        String imageIOFormat;
+        switch (extension.toLowerCase(Locale.ROOT)) {
+            case "tif":
+            case "tiff":
+                imageIOFormat = "tiff";
+                break;
+            case "jpg":
+            case "jpeg":
+                imageIOFormat = "jpeg";
+                break;
+            case "png":
+                imageIOFormat = "png";
+                break;
+            default:
+                throw new PDFWriteException("Cannot write placeholder image " + file + " in format " + extension);
+        }
+        int type = "tiff".equals(imageIOFormat) ? BufferedImage.TYPE_BYTE_BINARY : BufferedImage.TYPE_BYTE_GRAY;
+        BufferedImage image = new BufferedImage((int) Math.round(PLACEHOLDER_WIDTH * resolution), (int) Math.round(PLACEHOLDER_HEIGHT * resolution),
+                type);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.dispose();
+        try {
+            if (!ImageIO.write(image, imageIOFormat, file)) {
+                throw new PDFWriteException("Cannot write placeholder image " + file + " in format " + extension);
+            }
+        } catch (IOException e) {
+            throw new PDFWriteException("Cannot write placeholder image " + file + ": " + e.toString());
+        }
+    }
+
+    private static String[] getPageRangeParams(String generator, int firstPage, int lastPage) {
+        if ("ghostscript".equalsIgnoreCase(generator)) {
+            return new String[] { "-dFirstPage=" + firstPage, "-dLastPage=" + lastPage };
+        } else {
+            return new String[] { "-f", Integer.toString(firstPage), "-l", Integer.toString(lastPage) };
+        }
+    }
+
+    /**
+     * @return all pages which were rendered with fallback settings or could not be rendered at all
+     */
+    public List<DegradedPage> getDegradedPages() {
+        return Collections.unmodifiableList(degradedPages);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,132 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsyncPageWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteFiles() throws IOException, InterruptedException {
+        Path staging = folder.newFolder("staging").toPath();
+        Path target = folder.newFolder("target").toPath();
+        List<File> stagedFiles = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            Path file = staging.resolve(String.format("%08d.txt", i));
+            Files.writeString(file, "page " + i, StandardCharsets.UTF_8);
+            stagedFiles.add(file.toFile());
+        }
+
+        List<File> targetFiles;
+        try (AsyncPageWriter writer = new AsyncPageWriter(3, 7)) {
+            targetFiles = writer.submit(stagedFiles, target, null, null, null);
+            writer.awaitCompletion();
+            assertTrue(writer.getLatencyReport().startsWith("Wrote 20 files"));
+        }
+
+        assertEquals(20, targetFiles.size());
+        for (int i = 0; i < targetFiles.size(); i++) {
+            assertEquals(stagedFiles.get(i).getName(), targetFiles.get(i).getName());
+            assertEquals("page " + (i + 1), Files.readString(targetFiles.get(i).toPath(), StandardCharsets.UTF_8));
+            assertFalse(stagedFiles.get(i).exists());
+        }
+    }
+
+    @Test
+    public void testReportWrittenFiles() throws IOException, InterruptedException {
+        Path staging = folder.newFolder("staging").toPath();
+        Path target = folder.newFolder("target").toPath();
+        List<File> stagedFiles = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            Path file = staging.resolve(String.format("%08d.xml", i));
+            Files.writeString(file, "page " + i, StandardCharsets.UTF_8);
+            stagedFiles.add(file.toFile());
+        }
+
+        Map<Integer, File> reported = new ConcurrentHashMap<>();
+        try (AsyncPageWriter writer = new AsyncPageWriter(4, 3)) {
+            writer.submit(stagedFiles, target, null, (file, index) -> {
+                assertTrue(file.exists());
+                reported.put(index, file);
+            }, null);
+            writer.awaitCompletion();
+        }
+
+        assertEquals(10, reported.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(target.resolve(stagedFiles.get(i).getName()).toFile(), reported.get(i));
+        }
+    }
+
+    @Test
+    public void testReportFilesOncePerSyncedBatch() throws IOException, InterruptedException {
+        Path staging = folder.newFolder("staging").toPath();
+        Path target = folder.newFolder("target").toPath();
+        List<File> stagedFiles = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            Path file = staging.resolve(String.format("%08d.txt", i));
+            Files.writeString(file, "page " + i, StandardCharsets.UTF_8);
+            stagedFiles.add(file.toFile());
+        }
+
+        List<File> reported = Collections.synchronizedList(new ArrayList<>());
+        try (AsyncPageWriter writer = new AsyncPageWriter(1, 4)) {
+            writer.submit(stagedFiles, target, null, (file, index) -> reported.add(file), null);
+            long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (stagedFiles.get(9).exists() && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            // the last two files wait for their batch to be synced
+            assertEquals(8, reported.size());
+            writer.awaitCompletion();
+        }
+        assertEquals(10, reported.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReportMissingStagedFile() throws IOException, InterruptedException {
+        Path target = folder.newFolder("target").toPath();
+        try (AsyncPageWriter writer = new AsyncPageWriter(1, 1)) {
+            writer.submit(List.of(new File(folder.getRoot(), "missing.txt")), target, null, null, null);
+            writer.awaitCompletion();
+        }
+    }
+
+    @Test
+    public void testHandMissingStagedFileToCaller() throws IOException, InterruptedException {
+        Path staging = folder.newFolder("staging").toPath();
+        Path target = folder.newFolder("target").toPath();
+        Path existing = staging.resolve("00000001.txt");
+        Files.writeString(existing, "page 1", StandardCharsets.UTF_8);
+        Map<File, IOException> failed = new ConcurrentHashMap<>();
+        List<File> written = Collections.synchronizedList(new ArrayList<>());
+        try (AsyncPageWriter writer = new AsyncPageWriter(2, 1)) {
+            writer.submit(List.of(existing.toFile(), staging.resolve("00000002.txt").toFile()), target, null, (file, index) -> written.add(file),
+                    failed::put);
+            writer.awaitCompletion();
+        }
+
+        assertEquals(List.of(target.resolve("00000001.txt").toFile()), written);
+        assertEquals(1, failed.size());
+        assertTrue(failed.containsKey(target.resolve("00000002.txt").toFile()));
+    }
+}
@@ -0,0 +1,69 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChecksumManifestTest {
+
+    private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAddFiles() throws IOException {
+        Path textFolder = folder.newFolder("txt").toPath();
+        Path file = textFolder.resolve("00000001.txt");
+        Files.writeString(file, "abc", StandardCharsets.UTF_8);
+
+        ChecksumManifest manifest = new ChecksumManifest(textFolder, folder.getRoot().toPath().resolve("checksums").resolve("txt.sha256"));
+        manifest.addFiles(List.of(file.toFile()));
+        assertEquals(ABC_SHA256, manifest.getChecksum("00000001.txt"));
+        assertNull(manifest.getChecksum("00000002.txt"));
+        // the folder of the manifest is created if necessary
+        assertTrue(Files.isRegularFile(manifest.write()));
+    }
+
+    @Test
+    public void testMergeWithExistingManifest() throws IOException {
+        Path textFolder = folder.newFolder("txt").toPath();
+        Path manifestFile = folder.newFolder("checksums").toPath().resolve("txt.sha256");
+        Files.write(manifestFile, List.of("0000  00000001.txt", "1111  00000002.txt"), StandardCharsets.UTF_8);
+        Files.createFile(textFolder.resolve("00000001.txt"));
+        File file = Files.createFile(textFolder.resolve("00000002.txt")).toFile();
+        Files.writeString(file.toPath(), "abc", StandardCharsets.UTF_8);
+
+        ChecksumManifest manifest = new ChecksumManifest(textFolder, manifestFile);
+        manifest.addFiles(List.of(file));
+        assertEquals(manifestFile, manifest.write());
+
+        assertEquals(List.of("0000  00000001.txt", ABC_SHA256 + "  00000002.txt"), Files.readAllLines(manifestFile, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testDropEntriesOfDeletedFiles() throws IOException {
+        Path textFolder = folder.newFolder("txt").toPath();
+        Path manifestFile = folder.newFolder("checksums").toPath().resolve("txt.sha256");
+        Files.write(manifestFile, List.of("0000  00000001.txt", "1111  00000002.txt", "2222  00000003.txt"), StandardCharsets.UTF_8);
+        File file = Files.createFile(textFolder.resolve("00000001.txt")).toFile();
+        Files.writeString(file.toPath(), "abc", StandardCharsets.UTF_8);
+
+        ChecksumManifest manifest = new ChecksumManifest(textFolder, manifestFile);
+        manifest.addFiles(List.of(file));
+        assertEquals(manifestFile, manifest.write());
+
+        assertEquals(List.of(ABC_SHA256 + "  00000001.txt"), Files.readAllLines(manifestFile, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,34 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DocumentFeaturesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testClassify() {
+        assertEquals(DocumentFeatures.VECTOR, DocumentFeatures.classify("<< /ProcSet [/PDF /Text /ImageB /ImageC] >>"));
+        assertEquals(DocumentFeatures.BILEVEL,
+                DocumentFeatures.classify("<< /Type /XObject /Subtype /Image /Filter /JBIG2Decode >> << /Subtype/Image /Filter /DCTDecode >>"
+                        + "<< /Subtype /Image /Filter [/CCITTFaxDecode] >>"));
+        assertEquals(DocumentFeatures.JPEG,
+                DocumentFeatures.classify("<< /Subtype /Image /Filter /DCTDecode >> << /Subtype /Image /Filter /JPXDecode >>"));
+        assertEquals(DocumentFeatures.IMAGE, DocumentFeatures.classify("<< /Subtype /Image /Filter /FlateDecode >>"));
+    }
+
+    @Test
+    public void testClassifyPdf() throws Exception {
+        Path pdf = folder.getRoot().toPath().resolve("test.pdf");
+        new SyntheticPdf(1, 3).write(pdf);
+        assertEquals(DocumentFeatures.VECTOR, DocumentFeatures.classify(pdf.toFile(), DocumentFeatures.DEFAULT_SCAN_BYTES));
+        assertEquals(DocumentFeatures.VECTOR, DocumentFeatures.classify(pdf.toFile(), 10));
+    }
+}
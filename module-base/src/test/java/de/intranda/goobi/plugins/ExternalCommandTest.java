@@ -0,0 +1,84 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExternalCommandTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRunReturnsOutput() throws Exception {
+        assertEquals("hello\n", ExternalCommand.run(List.of("sh", "-c", "echo hello"), 10));
+    }
+
+    @Test
+    public void testExitCodes() throws Exception {
+        List<String> command = List.of("sh", "-c", "echo oops >&2; exit 2");
+        try {
+            ExternalCommand.run(command, 10);
+            fail("The exit code was not reported");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("oops"));
+        }
+        assertEquals("", ExternalCommand.run(command, 10, Set.of(0, 2)));
+    }
+
+    @Test
+    public void testTimeoutKillsProcessTree() throws Exception {
+        long start = System.currentTimeMillis();
+        try {
+            ExternalCommand.run(List.of("sh", "-c", "sleep 29 & sleep 29; wait"), 1);
+            fail("The timeout was not reported");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("did not finish"));
+        }
+        assertTrue(System.currentTimeMillis() - start < TimeUnit.SECONDS.toMillis(10));
+        assertTrue(waitForNoChildProcess("sleep 29"));
+    }
+
+    @Test
+    public void testKillChildProcesses() throws Exception {
+        File marker = folder.newFile("marker.pdf");
+        Process process = new ProcessBuilder("sh", "-c", "sleep 28; true", marker.getAbsolutePath()).start();
+        // wait until the command line of the shell can be read
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!hasChildProcess("sleep 28") && System.currentTimeMillis() < end) {
+            Thread.sleep(50);
+        }
+
+        assertEquals(1, ExternalCommand.killChildProcesses(marker.getAbsolutePath()));
+        assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+        assertTrue(waitForNoChildProcess("sleep 28"));
+        assertEquals(0, ExternalCommand.killChildProcesses(marker.getAbsolutePath()));
+    }
+
+    private static boolean waitForNoChildProcess(String commandLinePart) throws InterruptedException {
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (hasChildProcess(commandLinePart)) {
+            if (System.currentTimeMillis() > end) {
+                return false;
+            }
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    private static boolean hasChildProcess(String commandLinePart) {
+        return ProcessHandle.current()
+                .descendants()
+                .anyMatch(ph -> ph.isAlive() && ph.info().commandLine().map(line -> line.contains(commandLinePart)).orElse(false));
+    }
+}
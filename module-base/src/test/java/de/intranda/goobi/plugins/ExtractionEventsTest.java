@@ -0,0 +1,139 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.goobi.beans.Step;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.ExtractionSoakTest.SoakPlugin;
+import de.intranda.goobi.plugins.ExtractionSoakTest.SoakProcess;
+import ugh.dl.Prefs;
+
+public class ExtractionEventsTest {
+
+    private static final int PROCESS_ID = 42;
+    private static final String TITLE = "events_42";
+    private static final int PAGES = 3;
+    private static final String CONFIG_FILE = "plugin_intranda_step_pdf-extraction.xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Prefs prefs = new Prefs();
+    private Path root;
+    private Path configurationFolder;
+
+    @Before
+    public void setup() throws Exception {
+        assertTrue(prefs.loadPrefs(Paths.get("src/test/resources/ruleset.xml").toAbsolutePath().toString()));
+        PluginConfiguration.clearCache();
+        root = folder.getRoot().toPath();
+        configurationFolder = Files.createDirectories(root.resolve("config"));
+        try (InputStream in = getClass().getResourceAsStream("/soak/" + CONFIG_FILE)) {
+            Files.copy(in, configurationFolder.resolve(CONFIG_FILE));
+        }
+        Files.createDirectories(root.resolve("tmp"));
+    }
+
+    @Test
+    public void testS3FilesAreReportedInTheirDestination() throws Exception {
+        FakeS3Environment environment = new FakeS3Environment(root.resolve("processes"), root.resolve("tmp"), configurationFolder, 0, 0);
+        RecordingListener listener = new RecordingListener();
+
+        assertTrue(execute(environment, listener));
+        assertEquals(1, listener.finished);
+        assertNull(listener.failure);
+        assertFalse(listener.files.isEmpty());
+        Path processFolder = environment.getProcessFolder(PROCESS_ID);
+        for (File file : listener.files) {
+            assertTrue(file + " is not in the process folder", file.toPath().startsWith(processFolder));
+            assertTrue(file + " does not exist", file.isFile());
+        }
+    }
+
+    @Test
+    public void testFailedUploadIsReported() throws Exception {
+        FakeS3Environment environment = new FakeS3Environment(root.resolve("processes"), root.resolve("tmp"), configurationFolder, 0, 0) {
+            @Override
+            public void uploadDirectory(Path source, Path target) throws IOException {
+                throw new IOException("Bucket not reachable");
+            }
+        };
+        RecordingListener listener = new RecordingListener();
+
+        assertFalse(execute(environment, listener));
+        assertFalse(listener.files.isEmpty());
+        assertEquals(0, listener.finished);
+        assertNotNull(listener.failure);
+    }
+
+    @Test
+    public void testFailedMetsFileIsReported() throws Exception {
+        LocalExtractionEnvironment environment = new LocalExtractionEnvironment(root.resolve("processes"), root.resolve("tmp"), configurationFolder);
+        // a folder in place of the METS file cannot be written
+        Files.createDirectories(environment.getProcessFolder(PROCESS_ID).resolve("meta.xml"));
+        RecordingListener listener = new RecordingListener();
+
+        assertFalse(execute(environment, listener));
+        assertFalse(listener.files.isEmpty());
+        assertEquals(0, listener.finished);
+        assertNotNull(listener.failure);
+    }
+
+    private boolean execute(LocalExtractionEnvironment environment, RecordingListener listener) throws IOException {
+        Path processFolder = environment.getProcessFolder(PROCESS_ID);
+        Path sourceFolder = Files.createDirectories(processFolder.resolve("source"));
+        new SyntheticPdf(PROCESS_ID, PAGES).write(sourceFolder.resolve(TITLE + ".pdf"));
+
+        Step step = new Step();
+        step.setTitel("PDF extraction");
+        step.setProzess(new SoakProcess(PROCESS_ID, TITLE, processFolder.resolve("meta.xml"), prefs));
+        SoakPlugin plugin = new SoakPlugin(configurationFolder.resolve(CONFIG_FILE));
+        plugin.setEnvironment(environment);
+        plugin.initialize(step, "");
+        plugin.addPageCompletionListener(listener);
+        return plugin.execute();
+    }
+
+    /**
+     * Keeps the reported files and the end of the extraction
+     */
+    private static class RecordingListener implements PageCompletionListener {
+
+        private final List<File> files = Collections.synchronizedList(new ArrayList<>());
+        private int finished;
+        private Throwable failure;
+
+        @Override
+        public void pageCompleted(PageCompletedEvent event) {
+            files.add(event.getFile());
+        }
+
+        @Override
+        public void extractionFinished(Integer processId, int numberOfPages) {
+            finished++;
+        }
+
+        @Override
+        public void extractionFailed(Integer processId, Throwable cause) {
+            failure = cause;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.intranda.goobi.plugins.ExtractionResult.DocumentResult;
+import de.intranda.goobi.plugins.ExtractionResult.PageResult;
+import de.intranda.goobi.plugins.ExtractionResult.Stage;
+
+public class ExtractionResultTest {
+
+    @Test
+    public void testPageResults() {
+        ExtractionResult result = new ExtractionResult();
+        DocumentResult document = result.addDocument(new File("import/book.pdf"), 1);
+        for (int page = 2; page >= 1; page--) {
+            String name = String.format("%08d", page);
+            document.addFile(Stage.TEXT, new File("ocr/book_txt/" + name + ".txt"), 100 * page);
+            document.setTextCharacters(new File("staging/" + name + ".txt"), page == 1 ? 0 : 42);
+            document.addFile(Stage.IMAGES, new File("images/book_media/" + name + ".tif"), 1000 * page);
+        }
+        document.setNumberOfPages(2);
+
+        List<PageResult> pages = document.getPages();
+        assertEquals(2, pages.size());
+        assertEquals("00000001", pages.get(0).getName());
+        assertEquals(0, pages.get(0).getTextCharacters());
+        assertFalse(pages.get(0).hasText());
+        assertEquals(42, pages.get(1).getTextCharacters());
+        assertEquals(2000, pages.get(1).getBytes(Stage.IMAGES));
+        assertEquals("00000002.tif", pages.get(1).getFile(Stage.IMAGES).getName());
+        assertEquals(Set.of("00000002"), document.getPagesWithText());
+
+        assertEquals(300, result.getBytes(Stage.TEXT));
+        assertEquals(2, result.getNumberOfFiles(Stage.IMAGES));
+        assertEquals(0, result.getNumberOfFiles(Stage.ALTO));
+        assertTrue(result.hasFulltext());
+    }
+
+    @Test
+    public void testSummary() {
+        ExtractionResult result = new ExtractionResult();
+        DocumentResult first = result.addDocument(new File("first.pdf"), 1);
+        first.addFile(Stage.ALTO, new File("00000001.xml"), 10);
+        first.setNumberOfPages(1);
+        first.addDuration(Stage.ALTO, 5);
+        first.addDuration(Stage.ALTO, 7);
+        DocumentResult second = result.addDocument(new File("second.pdf"), 2);
+        second.setNumberOfPages(3);
+        second.addDegradedPages(List.of(new DegradedPage(ExtractionResult.Stage.IMAGES, 2, 3, "rendered with 150 dpi", false)));
+        second.addDegradation(Stage.TEXT, "no text layer");
+
+        assertEquals(12, first.getDuration(Stage.ALTO));
+        assertEquals(0, first.getDuration(Stage.TEXT));
+        assertEquals(4, result.getNumberOfPages());
+        assertEquals(2, result.getDegradations().size());
+        assertEquals("Added 2 pdf files with 4 pages to process: 1 ALTO files. 2 degradations occurred", result.getSummary());
+        assertTrue(result.hasFulltext());
+        assertFalse(new ExtractionResult().hasFulltext());
+    }
+
+    @Test
+    public void testKeptFulltext() {
+        ExtractionResult result = new ExtractionResult();
+        DocumentResult document = result.addDocument(new File("book.pdf"), 1);
+        document.addFile(Stage.IMAGES, new File("00000001.tif"), 1000);
+        document.setNumberOfPages(1);
+        assertFalse(result.hasFulltext());
+
+        result.setKeptFulltext(true);
+        assertTrue(result.isKeptFulltext());
+        assertTrue(result.hasFulltext());
+        assertEquals(0, result.getNumberOfFiles(Stage.TEXT));
+    }
+}
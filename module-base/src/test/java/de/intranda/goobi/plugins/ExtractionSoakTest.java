@@ -0,0 +1,354 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.log4j.Logger;
+import org.goobi.beans.GoobiProperty;
+import org.goobi.beans.Process;
+import org.goobi.beans.Project;
+import org.goobi.beans.Ruleset;
+import org.goobi.beans.Step;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.exceptions.PluginConfigurationException;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.FileSet;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.exceptions.UGHException;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Runs many executions of the plugin concurrently on generated pdf files, outside of a Goobi installation, and reports throughput, peak heap usage
+ * and any interference between the runs like files of one run ending up in another, wrong file names or leaked temporary files. Only runs if the
+ * system property 'pdfextraction.soak.runs' is set, e.g.
+ *
+ * <pre>
+ * mvn test -Dtest=ExtractionSoakTest -Dpdfextraction.soak.runs=48 -Dpdfextraction.soak.threads=12 -Dpdfextraction.soak.pages=30
+ * </pre>
+ *
+ * Further properties are 'pdfextraction.soak.images' to also create images, 'pdfextraction.soak.s3.latency' for the latency of each request to the
+ * simulated S3 storage in milliseconds and 'pdfextraction.soak.s3.bandwidth' for its bandwidth in bytes per second.
+ */
+public class ExtractionSoakTest {
+
+    private static final Logger logger = Logger.getLogger(ExtractionSoakTest.class);
+
+    private static final String PROJECT_NAME = "Soak";
+    private static final String STEP_NAME = "PDF extraction";
+    private static final String CONFIG_FILE = "plugin_intranda_step_pdf-extraction.xml";
+    private static final Pattern PAGE_TEXT = Pattern.compile("Run (\\d+) page (\\d+)");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Prefs prefs = new Prefs();
+    private int runs;
+    private int threads;
+    private int pages;
+
+    @Before
+    public void setup() throws Exception {
+        runs = Integer.getInteger("pdfextraction.soak.runs", 0);
+        threads = Integer.getInteger("pdfextraction.soak.threads", 8);
+        pages = Integer.getInteger("pdfextraction.soak.pages", 20);
+        assumeTrue(runs > 0);
+        assertTrue(prefs.loadPrefs(Paths.get("src/test/resources/ruleset.xml").toAbsolutePath().toString()));
+        PluginConfiguration.clearCache();
+    }
+
+    @Test
+    public void soakLocalStorage() throws Exception {
+        Path root = folder.getRoot().toPath();
+        LocalExtractionEnvironment environment =
+                new LocalExtractionEnvironment(root.resolve("processes"), root.resolve("tmp"), createConfigurationFolder(root));
+        soak(environment);
+    }
+
+    @Test
+    public void soakS3Storage() throws Exception {
+        Path root = folder.getRoot().toPath();
+        FakeS3Environment environment = new FakeS3Environment(root.resolve("processes"), root.resolve("tmp"), createConfigurationFolder(root),
+                Long.getLong("pdfextraction.soak.s3.latency", 20), Long.getLong("pdfextraction.soak.s3.bandwidth", 0));
+        soak(environment);
+        logger.info("S3 requests:      " + environment.getRequests());
+    }
+
+    private void soak(LocalExtractionEnvironment environment) throws Exception {
+        Files.createDirectories(Path.of(environment.getTemporaryFolder()));
+        List<SoakRun> soakRuns = new ArrayList<>();
+        for (int i = 1; i <= runs; i++) {
+            SoakRun run = new SoakRun(1000 + i, environment);
+            run.prepare();
+            soakRuns.add(run);
+        }
+
+        AtomicLong peakHeap = new AtomicLong();
+        ScheduledExecutorService heapSampler = Executors.newSingleThreadScheduledExecutor();
+        heapSampler.scheduleAtFixedRate(() -> {
+            Runtime runtime = Runtime.getRuntime();
+            peakHeap.accumulateAndGet(runtime.totalMemory() - runtime.freeMemory(), Math::max);
+        }, 0, 20, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (SoakRun run : soakRuns) {
+                futures.add(executor.submit(run::execute));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            heapSampler.shutdownNow();
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+
+        List<String> problems = new ArrayList<>();
+        for (SoakRun run : soakRuns) {
+            problems.addAll(run.verify());
+        }
+        problems.addAll(getLeakedFiles(Path.of(environment.getTemporaryFolder())));
+
+        List<Long> durations = soakRuns.stream().map(run -> run.duration).sorted().collect(Collectors.toList());
+        logger.info("Executions:       " + runs + " with " + threads + " threads, " + pages + " pages each");
+        logger.info("Wall time:        " + millis + " ms");
+        logger.info("Throughput:       " + String.format("%.2f", runs * 1000.0 / millis) + " executions/s, "
+                + String.format("%.1f", runs * pages * 1000.0 / millis) + " pages/s");
+        logger.info("Execution time:   median " + durations.get(durations.size() / 2) + " ms, max " + durations.get(durations.size() - 1)
+                + " ms");
+        logger.info("Peak heap:        " + peakHeap.get() / (1024 * 1024) + " MB (sampled)");
+        logger.info("Interference:     " + (problems.isEmpty() ? "none" : problems.size() + " problems"));
+        problems.forEach(problem -> logger.warn("    " + problem));
+
+        assertTrue(String.join("\n", problems), problems.isEmpty());
+    }
+
+    private Path createConfigurationFolder(Path root) throws IOException {
+        Path configurationFolder = Files.createDirectories(root.resolve("config"));
+        try (InputStream in = getClass().getResourceAsStream("/soak/" + CONFIG_FILE)) {
+            Files.copy(in, configurationFolder.resolve(CONFIG_FILE));
+        }
+        return configurationFolder;
+    }
+
+    private static List<String> getLeakedFiles(Path temporaryFolder) throws IOException {
+        try (Stream<Path> files = Files.walk(temporaryFolder)) {
+            return files.filter(path -> !path.equals(temporaryFolder))
+                    .map(path -> "Leaked temporary file " + temporaryFolder.relativize(path))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * A single execution of the plugin for its own process
+     */
+    private class SoakRun {
+
+        private final int processId;
+        private final String title;
+        private final LocalExtractionEnvironment environment;
+        private final Path processFolder;
+        private boolean success;
+        private Throwable error;
+        private long duration;
+
+        private SoakRun(int processId, LocalExtractionEnvironment environment) {
+            this.processId = processId;
+            this.title = "soak_" + processId;
+            this.environment = environment;
+            this.processFolder = environment.getProcessFolder(processId);
+        }
+
+        private void prepare() throws IOException {
+            Path sourceFolder = Files.createDirectories(processFolder.resolve("source"));
+            new SyntheticPdf(processId, pages).write(sourceFolder.resolve(title + ".pdf"));
+        }
+
+        private void execute() {
+            long start = System.nanoTime();
+            try {
+                SoakProcess process = new SoakProcess(processId, title, processFolder.resolve("meta.xml"), prefs);
+                Step step = new Step();
+                step.setTitel(STEP_NAME);
+                step.setProzess(process);
+                SoakPlugin plugin = new SoakPlugin(Path.of(environment.getConfigurationFolder(), CONFIG_FILE));
+                plugin.setEnvironment(environment);
+                plugin.initialize(step, "");
+                success = plugin.execute();
+            } catch (Throwable e) {
+                error = e;
+            }
+            duration = (System.nanoTime() - start) / 1_000_000;
+        }
+
+        private List<String> verify() throws IOException, UGHException {
+            List<String> problems = new ArrayList<>();
+            if (!success) {
+                problems.add(processId + ": execution failed " + (error == null ? environment.getJournal(processId) : error.toString()));
+                return problems;
+            }
+            Path textFolder = processFolder.resolve("ocr").resolve(title + "_txt");
+            List<Path> textFiles = environment.listFiles(textFolder.toString(), path -> path.toString().endsWith(".txt"));
+            for (int page = 1; page <= pages; page++) {
+                String name = String.format("%08d.txt", page);
+                if (textFiles.size() < page || !textFiles.get(page - 1).getFileName().toString().equals(name)) {
+                    problems.add(processId + ": missing or misnamed text file " + name);
+                    continue;
+                }
+                Matcher matcher = PAGE_TEXT.matcher(Files.readString(textFiles.get(page - 1), StandardCharsets.UTF_8));
+                while (matcher.find()) {
+                    if (Integer.parseInt(matcher.group(1)) != processId || Integer.parseInt(matcher.group(2)) != page) {
+                        problems.add(processId + ": text file " + name + " contains '" + matcher.group() + "'");
+                    }
+                }
+            }
+            if (textFiles.size() != pages) {
+                problems.add(processId + ": " + textFiles.size() + " text files instead of " + pages);
+            }
+            checkNumberOfFiles(problems, processFolder.resolve("ocr").resolve(title + "_alto"), ".xml");
+            checkNumberOfFiles(problems, processFolder.resolve("ocr").resolve(title + "_pdf"), ".pdf");
+            if (!Files.isRegularFile(processFolder.resolve("checksums").resolve(title + "_txt.sha256"))) {
+                problems.add(processId + ": missing checksum manifest of " + processFolder.relativize(textFolder));
+            }
+
+            Fileformat ff = new MetsMods(prefs);
+            ff.read(processFolder.resolve("meta.xml").toString());
+            List<DocStruct> physicalPages = ff.getDigitalDocument().getPhysicalDocStruct().getAllChildren();
+            int numberOfPages = physicalPages == null ? 0 : physicalPages.size();
+            if (numberOfPages != pages) {
+                problems.add(processId + ": " + numberOfPages + " pages in the METS file instead of " + pages);
+            }
+
+            List<GoobiProperty> properties = environment.getProperties(processId);
+            if (properties.size() != 1 || !"TRUE".equals(properties.get(0).getWert())) {
+                problems.add(processId + ": unexpected fulltext properties " + properties.size());
+            }
+            for (String message : environment.getJournal(processId)) {
+                if (message.startsWith("ERROR") || message.contains("soak_") && !message.contains(title)) {
+                    problems.add(processId + ": journal message '" + message + "'");
+                }
+            }
+            return problems;
+        }
+
+        private void checkNumberOfFiles(List<String> problems, Path fileFolder, String extension) throws IOException {
+            int numberOfFiles = environment.listFiles(fileFolder.toString(), path -> path.toString().endsWith(extension)).size();
+            if (numberOfFiles != pages) {
+                problems.add(processId + ": " + numberOfFiles + " files in " + processFolder.relativize(fileFolder) + " instead of " + pages);
+            }
+        }
+    }
+
+    /**
+     * The plugin reading its configuration directly from the configuration folder of the environment
+     */
+    static class SoakPlugin extends PDFExtractionPlugin {
+
+        private final Path configFile;
+
+        SoakPlugin(Path configFile) {
+            this.configFile = configFile;
+        }
+
+        @Override
+        protected Configuration getConfig(String projectName, String stepName) throws PluginConfigurationException {
+            try {
+                XMLConfiguration config = new XMLConfiguration();
+                config.setListDelimiter('&');
+                config.load(configFile.toFile());
+                config.setProperty("images.write", Boolean.getBoolean("pdfextraction.soak.images"));
+                return config;
+            } catch (ConfigurationException e) {
+                throw new PluginConfigurationException("Error reading config file " + configFile, e);
+            }
+        }
+    }
+
+    /**
+     * A process with an empty Monograph as metadata, stored in a local folder
+     */
+    static class SoakProcess extends Process {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Path metadataFile;
+        private final transient Prefs prefs;
+
+        SoakProcess(int id, String title, Path metadataFile, Prefs prefs) {
+            this.metadataFile = metadataFile;
+            this.prefs = prefs;
+            setId(id);
+            setTitel(title);
+            Project project = new Project();
+            project.setTitel(PROJECT_NAME);
+            setProjekt(project);
+            setRegelsatz(new SoakRuleset(prefs));
+        }
+
+        @Override
+        public Fileformat readMetadataFile() throws IOException {
+            try {
+                Fileformat ff = new MetsMods(prefs);
+                DigitalDocument dd = new DigitalDocument();
+                ff.setDigitalDocument(dd);
+                dd.setLogicalDocStruct(dd.createDocStruct(prefs.getDocStrctTypeByName("Monograph")));
+                dd.setPhysicalDocStruct(dd.createDocStruct(prefs.getDocStrctTypeByName("BoundBook")));
+                dd.setFileSet(new FileSet());
+                return ff;
+            } catch (UGHException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public String getMetadataFilePath() {
+            return metadataFile.toString();
+        }
+    }
+
+    private static class SoakRuleset extends Ruleset {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Prefs prefs;
+
+        private SoakRuleset(Prefs prefs) {
+            this.prefs = prefs;
+        }
+
+        @Override
+        public Prefs getPreferences() {
+            return prefs;
+        }
+    }
+}
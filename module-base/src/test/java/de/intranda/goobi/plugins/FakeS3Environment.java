@@ -0,0 +1,105 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream.Filter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link LocalExtractionEnvironment} which behaves like a Goobi installation storing its processes in S3. The bucket is simulated by the processes
+ * folder. Each request to the bucket is delayed by a configurable latency and each transferred file additionally by the time needed to transfer
+ * its bytes with the configured bandwidth.
+ */
+public class FakeS3Environment extends LocalExtractionEnvironment {
+
+    private final Path bucket;
+    private final long latencyMillis;
+    private final long bytesPerSecond;
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * @param processesFolder the folder simulating the bucket
+     * @param temporaryFolder the local temporary folder
+     * @param configurationFolder the configuration folder
+     * @param latencyMillis the latency of each request in milliseconds
+     * @param bytesPerSecond the bandwidth for file transfers. 0 for unlimited
+     */
+    public FakeS3Environment(Path processesFolder, Path temporaryFolder, Path configurationFolder, long latencyMillis, long bytesPerSecond) {
+        super(processesFolder, temporaryFolder, configurationFolder);
+        this.bucket = processesFolder;
+        this.latencyMillis = latencyMillis;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    @Override
+    public boolean useS3() {
+        return true;
+    }
+
+    @Override
+    public List<Path> listFiles(String folder, Filter<Path> filter) throws IOException {
+        if (isInBucket(Path.of(folder))) {
+            delay(0);
+        }
+        return super.listFiles(folder, filter);
+    }
+
+    @Override
+    public void deleteFile(Path file) throws IOException {
+        if (isInBucket(file)) {
+            delay(0);
+        }
+        super.deleteFile(file);
+    }
+
+    @Override
+    public void deleteDir(Path folder) throws IOException {
+        if (isInBucket(folder)) {
+            delay(0);
+        }
+        super.deleteDir(folder);
+    }
+
+    @Override
+    protected void copyFiles(Path source, Path target) throws IOException {
+        if (!Files.isDirectory(source)) {
+            return;
+        }
+        Files.createDirectories(target);
+        for (Path file : super.listFiles(source.toString(), path -> true)) {
+            delay(Files.size(file));
+            Files.copy(file, target.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return the number of requests sent to the bucket so far
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    private boolean isInBucket(Path path) {
+        return path.toAbsolutePath().normalize().startsWith(bucket.toAbsolutePath().normalize());
+    }
+
+    private void delay(long bytes) throws InterruptedIOException {
+        requests.incrementAndGet();
+        long millis = latencyMillis;
+        if (bytesPerSecond > 0) {
+            millis += bytes * 1000 / bytesPerSecond;
+        }
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the bucket");
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GeneratorStatisticsTest {
+
+    private static final List<String> GENERATORS = List.of("ghostscript", "pdftoppm");
+    private static final int RESOLUTION = 300;
+    private static final String MODE = GeneratorStatistics.STREAMING;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTryEachGeneratorFirst() throws IOException {
+        GeneratorStatistics statistics = new GeneratorStatistics(getFile(), 2, 0, new Random(1));
+        for (int run = 0; run < 4; run++) {
+            String generator = statistics.choose(DocumentFeatures.JPEG, RESOLUTION, GENERATORS, candidate -> MODE);
+            statistics.record(DocumentFeatures.JPEG, RESOLUTION, MODE, generator, 10, 1000);
+        }
+        assertEquals(2, statistics.getRuns(DocumentFeatures.JPEG, RESOLUTION, MODE, "ghostscript"));
+        assertEquals(2, statistics.getRuns(DocumentFeatures.JPEG, RESOLUTION, MODE, "pdftoppm"));
+        assertEquals(10.0, statistics.getPagesPerSecond(DocumentFeatures.JPEG, RESOLUTION, MODE, "pdftoppm"), 0.001);
+    }
+
+    @Test
+    public void testChooseFastestPerFeature() throws IOException {
+        GeneratorStatistics statistics = new GeneratorStatistics(getFile(), 1, 0, new Random(1));
+        statistics.record(DocumentFeatures.VECTOR, RESOLUTION, MODE, "ghostscript", 100, 10_000);
+        statistics.record(DocumentFeatures.VECTOR, RESOLUTION, MODE, "pdftoppm", 100, 5_000);
+        statistics.record(DocumentFeatures.BILEVEL, RESOLUTION, MODE, "ghostscript", 100, 2_000);
+        statistics.record(DocumentFeatures.BILEVEL, RESOLUTION, MODE, "pdftoppm", 100, 8_000);
+
+        assertEquals("pdftoppm", statistics.choose(DocumentFeatures.VECTOR, RESOLUTION, GENERATORS, candidate -> MODE));
+        assertEquals("ghostscript", statistics.choose(DocumentFeatures.BILEVEL, RESOLUTION, GENERATORS, candidate -> MODE));
+        // an unknown kind of document tries the generators first
+        assertEquals("ghostscript", statistics.choose(DocumentFeatures.IMAGE, RESOLUTION, GENERATORS, candidate -> MODE));
+    }
+
+    @Test
+    public void testSeparateResolutionsAndModes() throws IOException {
+        GeneratorStatistics statistics = new GeneratorStatistics(getFile(), 1, 0, new Random(1));
+        statistics.record(DocumentFeatures.JPEG, 300, GeneratorStatistics.STREAMING, "ghostscript", 100, 2_000);
+        statistics.record(DocumentFeatures.JPEG, 300, GeneratorStatistics.TEMP_FILE, "ghostscript", 100, 10_000);
+        statistics.record(DocumentFeatures.JPEG, 300, GeneratorStatistics.STREAMING, "pdftoppm", 100, 5_000);
+        statistics.record(DocumentFeatures.JPEG, 600, GeneratorStatistics.STREAMING, "ghostscript", 100, 20_000);
+        statistics.record(DocumentFeatures.JPEG, 600, GeneratorStatistics.STREAMING, "pdftoppm", 100, 5_000);
+
+        assertEquals(50.0, statistics.getPagesPerSecond(DocumentFeatures.JPEG, 300, GeneratorStatistics.STREAMING, "ghostscript"), 0.001);
+        assertEquals(10.0, statistics.getPagesPerSecond(DocumentFeatures.JPEG, 300, GeneratorStatistics.TEMP_FILE, "ghostscript"), 0.001);
+        assertEquals("ghostscript", statistics.choose(DocumentFeatures.JPEG, 300, GENERATORS, generator -> GeneratorStatistics.STREAMING));
+        // ghostscript would not be streamed
+        assertEquals("pdftoppm", statistics.choose(DocumentFeatures.JPEG, 300, GENERATORS,
+                generator -> "ghostscript".equals(generator) ? GeneratorStatistics.TEMP_FILE : GeneratorStatistics.STREAMING));
+        assertEquals("pdftoppm", statistics.choose(DocumentFeatures.JPEG, 600, GENERATORS, generator -> GeneratorStatistics.STREAMING));
+        // a resolution without statistics tries the generators first
+        assertEquals(0, statistics.getRuns(DocumentFeatures.JPEG, 150, GeneratorStatistics.STREAMING, "ghostscript"));
+    }
+
+    @Test
+    public void testRecentRunsWeighMore() throws IOException {
+        GeneratorStatistics statistics = new GeneratorStatistics(getFile(), 1, 0, new Random(1));
+        statistics.record(DocumentFeatures.JPEG, RESOLUTION, MODE, "ghostscript", 100, 5_000);
+        statistics.record(DocumentFeatures.JPEG, RESOLUTION, MODE, "pdftoppm", 100, 4_000);
+        assertEquals("pdftoppm", statistics.choose(DocumentFeatures.JPEG, RESOLUTION, GENERATORS, candidate -> MODE));
+        for (int run = 0; run < 5; run++) {
+            statistics.record(DocumentFeatures.JPEG, RESOLUTION, MODE, "pdftoppm", 100, 20_000);
+        }
+        assertEquals("ghostscript", statistics.choose(DocumentFeatures.JPEG, RESOLUTION, GENERATORS, candidate -> MODE));
+    }
+
+    @Test
+    public void testExploration() throws IOException {
+        GeneratorStatistics statistics = new GeneratorStatistics(getFile(), 1, 0.2, new Random(42));
+        statistics.record(DocumentFeatures.JPEG, RESOLUTION, MODE, "ghostscript", 100, 1_000);
+        statistics.record(DocumentFeatures.JPEG, RESOLUTION, MODE, "pdftoppm", 100, 10_000);
+        int explored = 0;
+        for (int run = 0; run < 1000; run++) {
+            if ("pdftoppm".equals(statistics.choose(DocumentFeatures.JPEG, RESOLUTION, GENERATORS, candidate -> MODE))) {
+                explored++;
+            }
+        }
+        assertTrue("explored " + explored + " times", explored > 150 && explored < 250);
+    }
+
+    @Test
+    public void testConcurrentRecords() throws Exception {
+        Path file = getFile();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // separate instances, like separate plugin runs sharing the file
+            GeneratorStatistics statistics = new GeneratorStatistics(file, 1, 0, new Random(i));
+            futures.add(executor.submit(() -> {
+                statistics.record(DocumentFeatures.IMAGE, RESOLUTION, MODE, "ghostscript", 10, 1000);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertEquals(200, new GeneratorStatistics(file, 1, 0, new Random()).getRuns(DocumentFeatures.IMAGE, RESOLUTION, MODE, "ghostscript"));
+    }
+
+    private Path getFile() {
+        return folder.getRoot().toPath().resolve("statistics").resolve("generators.properties");
+    }
+}
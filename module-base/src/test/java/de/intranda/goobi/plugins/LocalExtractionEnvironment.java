@@ -0,0 +1,171 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream.Filter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.goobi.beans.GoobiProperty;
+import org.goobi.beans.Process;
+import org.goobi.beans.Step;
+import org.goobi.production.enums.LogType;
+
+import de.sub.goobi.helper.VariableReplacer;
+import ugh.dl.DigitalDocument;
+import ugh.dl.Prefs;
+
+/**
+ * An {@link ExtractionEnvironment} on the local file system. The data of each process is kept in a folder named after the process id within the
+ * processes folder. Journal messages and saved properties are kept in memory per process.
+ */
+public class LocalExtractionEnvironment implements ExtractionEnvironment {
+
+    private final Path processesFolder;
+    private final Path temporaryFolder;
+    private final Path configurationFolder;
+    private final Map<Integer, List<String>> journal = new ConcurrentHashMap<>();
+    private final Map<Integer, List<GoobiProperty>> properties = new ConcurrentHashMap<>();
+
+    public LocalExtractionEnvironment(Path processesFolder, Path temporaryFolder, Path configurationFolder) {
+        this.processesFolder = processesFolder;
+        this.temporaryFolder = temporaryFolder;
+        this.configurationFolder = configurationFolder;
+    }
+
+    @Override
+    public List<Path> listFiles(String folder) throws IOException {
+        return listFiles(folder, path -> true);
+    }
+
+    @Override
+    public List<Path> listFiles(String folder, Filter<Path> filter) throws IOException {
+        Path dir = Path.of(folder);
+        if (!Files.isDirectory(dir)) {
+            return Collections.emptyList();
+        }
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(dir)) {
+            for (Path path : stream.sorted().collect(Collectors.toList())) {
+                if (Files.isRegularFile(path) && !path.getFileName().toString().startsWith(".") && filter.accept(path)) {
+                    files.add(path);
+                }
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public void downloadDirectory(Path source, Path target) throws IOException {
+        copyFiles(source, target);
+    }
+
+    @Override
+    public void uploadDirectory(Path source, Path target) throws IOException {
+        copyFiles(source, target);
+    }
+
+    @Override
+    public void deleteDir(Path folder) throws IOException {
+        FileUtils.deleteDirectory(folder.toFile());
+    }
+
+    @Override
+    public void deleteFile(Path file) throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public boolean useS3() {
+        return false;
+    }
+
+    @Override
+    public String getTemporaryFolder() {
+        return temporaryFolder.toString();
+    }
+
+    @Override
+    public String getConfigurationFolder() {
+        return configurationFolder.toString();
+    }
+
+    @Override
+    public VariableReplacer createVariableReplacer(DigitalDocument digitalDocument, Prefs prefs, Process process, Step step) {
+        return new LocalVariableReplacer(digitalDocument, prefs, process, step, getProcessFolder(process.getId()));
+    }
+
+    @Override
+    public void addMessageToProcessJournal(Integer processId, LogType type, String message) {
+        journal.computeIfAbsent(processId, id -> Collections.synchronizedList(new ArrayList<>())).add(type + ": " + message);
+    }
+
+    @Override
+    public void addMessageToProcessJournal(Integer processId, LogType type, String message, String userName) {
+        addMessageToProcessJournal(processId, type, message);
+    }
+
+    @Override
+    public void saveProperty(GoobiProperty property) {
+        Integer processId = property.getOwner() instanceof Process ? ((Process) property.getOwner()).getId() : null;
+        properties.computeIfAbsent(processId == null ? -1 : processId, id -> Collections.synchronizedList(new ArrayList<>())).add(property);
+    }
+
+    public Path getProcessFolder(Integer processId) {
+        return processesFolder.resolve(String.valueOf(processId));
+    }
+
+    public List<String> getJournal(Integer processId) {
+        return journal.getOrDefault(processId, Collections.emptyList());
+    }
+
+    public List<GoobiProperty> getProperties(Integer processId) {
+        return properties.getOrDefault(processId, Collections.emptyList());
+    }
+
+    protected void copyFiles(Path source, Path target) throws IOException {
+        if (!Files.isDirectory(source)) {
+            return;
+        }
+        Files.createDirectories(target);
+        for (Path file : listFiles(source.toString())) {
+            Files.copy(file, target.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Replaces the folder variables used in the plugin configuration by folders within the process folder
+     */
+    private static class LocalVariableReplacer extends VariableReplacer {
+
+        private final Map<String, String> variables = new LinkedHashMap<>();
+
+        private LocalVariableReplacer(DigitalDocument digitalDocument, Prefs prefs, Process process, Step step, Path processFolder) {
+            super(digitalDocument, prefs, process, step);
+            variables.put("{processpath}", processFolder.toString());
+            variables.put("{processtitle}", process.getTitel());
+            variables.put("{origpath}", processFolder.resolve("images").resolve(process.getTitel() + "_media").toString());
+            variables.put("{tifpath}", processFolder.resolve("images").resolve(process.getTitel() + "_media").toString());
+            variables.put("{importpath}", processFolder.resolve("import").toString());
+            variables.put("{processid}", String.valueOf(process.getId()));
+        }
+
+        @Override
+        public String replace(String value) {
+            String replaced = value;
+            for (Map.Entry<String, String> variable : variables.entrySet()) {
+                replaced = replaced.replace(variable.getKey(), variable.getValue());
+            }
+            return replaced;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class NetpbmReaderTest {
+
+    @Test
+    public void testReadSequence() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writePpm(out, 3, 2, 0);
+        // header with comment, as written by some generators
+        write(out, "P5\n# gray page\n2 2\n255\n");
+        out.write(new byte[] { 0, 64, (byte) 128, (byte) 255 });
+        // a bitmap of 10 pixels per row, padded to two bytes: black, white, black ...
+        write(out, "P4\n10 1\n");
+        out.write(new byte[] { (byte) 0b10101010, (byte) 0b10000000 });
+        writePpm(out, 1, 1, 7);
+
+        NetpbmReader reader = new NetpbmReader(new ByteArrayInputStream(out.toByteArray()));
+
+        BufferedImage rgb = reader.read();
+        assertEquals(3, rgb.getWidth());
+        assertEquals(2, rgb.getHeight());
+        assertEquals(getColor(2, 1, 0), rgb.getRGB(2, 1) & 0xffffff);
+        assertEquals(getColor(0, 0, 0), rgb.getRGB(0, 0) & 0xffffff);
+
+        BufferedImage gray = reader.read();
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, gray.getType());
+        assertEquals(64, gray.getRaster().getSample(1, 0, 0));
+        assertEquals(255, gray.getRaster().getSample(1, 1, 0));
+
+        BufferedImage bitmap = reader.read();
+        assertEquals(BufferedImage.TYPE_BYTE_BINARY, bitmap.getType());
+        assertEquals(10, bitmap.getWidth());
+        assertEquals(0x000000, bitmap.getRGB(0, 0) & 0xffffff);
+        assertEquals(0xffffff, bitmap.getRGB(1, 0) & 0xffffff);
+        assertEquals(0x000000, bitmap.getRGB(8, 0) & 0xffffff);
+        assertEquals(0xffffff, bitmap.getRGB(9, 0) & 0xffffff);
+
+        assertEquals(getColor(0, 0, 7), reader.read().getRGB(0, 0) & 0xffffff);
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void testReadPam() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, "P7\nWIDTH 2\nHEIGHT 1\nDEPTH 3\nMAXVAL 255\nTUPLTYPE RGB\nENDHDR\n");
+        out.write(new byte[] { 10, 20, 30, 40, 50, 60 });
+        write(out, "P7\nWIDTH 2\nHEIGHT 1\nDEPTH 1\nMAXVAL 1\nTUPLTYPE BLACKANDWHITE\nENDHDR\n");
+        out.write(new byte[] { 0, 1 });
+
+        NetpbmReader reader = new NetpbmReader(new ByteArrayInputStream(out.toByteArray()));
+        BufferedImage rgb = reader.read();
+        assertEquals(0x0a141e, rgb.getRGB(0, 0) & 0xffffff);
+        assertEquals(0x28323c, rgb.getRGB(1, 0) & 0xffffff);
+        BufferedImage bitmap = reader.read();
+        assertEquals(0x000000, bitmap.getRGB(0, 0) & 0xffffff);
+        assertEquals(0xffffff, bitmap.getRGB(1, 0) & 0xffffff);
+        assertNull(reader.read());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedImage() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writePpm(out, 4, 4, 0);
+        byte[] bytes = out.toByteArray();
+        new NetpbmReader(new ByteArrayInputStream(bytes, 0, bytes.length - 5)).read();
+    }
+
+    /**
+     * Write an RGB image whose pixels encode their position and the given seed
+     */
+    static void writePpm(ByteArrayOutputStream out, int width, int height, int seed) {
+        write(out, "P6\n" + width + " " + height + "\n255\n");
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int color = getColor(x, y, seed);
+                out.write(color >> 16);
+                out.write(color >> 8 & 0xff);
+                out.write(color & 0xff);
+            }
+        }
+    }
+
+    static int getColor(int x, int y, int seed) {
+        return (x * 40 % 256) << 16 | (y * 40 % 256) << 8 | seed % 256;
+    }
+
+    private static void write(ByteArrayOutputStream out, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,44 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.intranda.goobi.plugins.OutlineReader.OutlineEntry;
+
+public class OutlineReaderTest {
+
+    /** Output of 'qpdf --json --json-key=outlines --json-key=pages' for a three page document */
+    private Path qpdfOutput = Paths.get("src/test/resources/qpdf_outlines.json");
+
+    @Test
+    public void testParseQpdfOutput() throws Exception {
+        List<OutlineEntry> entries = OutlineReader.parse(new ObjectMapper().readTree(qpdfOutput.toFile()));
+
+        assertEquals(5, entries.size());
+        assertEntry(entries.get(0), "Preface", 0, 1);
+        assertEntry(entries.get(1), "Part 1", 0, 2);
+        // resolved from the page object, since qpdf did not report the page position
+        assertEntry(entries.get(2), "Chapter 1.1", 1, 3);
+        // no destination at all
+        assertEntry(entries.get(3), "Chapter 1.2", 1, 0);
+        assertEntry(entries.get(4), "Appendix", 0, 3);
+    }
+
+    @Test
+    public void testParseDocumentWithoutOutline() throws Exception {
+        assertEquals(0, OutlineReader.parse(new ObjectMapper().readTree("{\"pages\": [{\"object\": \"3 0 R\"}], \"outlines\": []}")).size());
+    }
+
+    private static void assertEntry(OutlineEntry entry, String title, int depth, int pageNumber) {
+        assertEquals(title, entry.getTitle());
+        assertEquals(depth, entry.getDepth());
+        assertEquals(pageNumber, entry.getPageNumber());
+    }
+}
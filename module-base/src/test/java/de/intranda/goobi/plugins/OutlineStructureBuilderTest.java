@@ -0,0 +1,143 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.intranda.goobi.plugins.OutlineReader.OutlineEntry;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.dl.Prefs;
+import ugh.exceptions.UGHException;
+
+public class OutlineStructureBuilderTest {
+
+    private static final Logger logger = Logger.getLogger(OutlineStructureBuilderTest.class);
+
+    private Path ruleset = Paths.get("src/test/resources/ruleset.xml");
+    private Prefs prefs = new Prefs();
+
+    @Before
+    public void setup() throws Exception {
+        assertTrue(prefs.loadPrefs(ruleset.toAbsolutePath().toString()));
+    }
+
+    @Test
+    public void testPageRanges() throws UGHException {
+        DigitalDocument document = createDocument(10);
+        List<OutlineEntry> entries = new ArrayList<>();
+        entries.add(new OutlineEntry("Preface", 0, 1));
+        entries.add(new OutlineEntry("Part 1", 0, 3));
+        entries.add(new OutlineEntry("Chapter 1.1", 1, 4));
+        entries.add(new OutlineEntry("Chapter 1.2", 1, 6));
+        entries.add(new OutlineEntry("Part 2", 0, 8));
+
+        DocStruct parent = document.getLogicalDocStruct();
+        int created = createBuilder(document, 0, true).build(parent, entries, document.getPhysicalDocStruct().getAllChildren());
+
+        assertEquals(5, created);
+        List<DocStruct> topLevel = parent.getAllChildren();
+        assertEquals(3, topLevel.size());
+        assertEquals(2, topLevel.get(0).getAllToReferences().size());
+        assertEquals(5, topLevel.get(1).getAllToReferences().size());
+        assertEquals(2, topLevel.get(1).getAllChildren().get(0).getAllToReferences().size());
+        assertEquals(2, topLevel.get(1).getAllChildren().get(1).getAllToReferences().size());
+        assertEquals(3, topLevel.get(2).getAllToReferences().size());
+    }
+
+    @Test
+    public void testMaxDepth() throws UGHException {
+        List<OutlineEntry> entries = createOutline(3, 4);
+
+        DigitalDocument flattened = createDocument(200);
+        int created = createBuilder(flattened, 2, true).build(flattened.getLogicalDocStruct(), entries,
+                flattened.getPhysicalDocStruct().getAllChildren());
+        assertEquals(entries.size(), created);
+        assertEquals(2, getDepth(flattened.getLogicalDocStruct()));
+
+        DigitalDocument dropped = createDocument(200);
+        created = createBuilder(dropped, 2, false).build(dropped.getLogicalDocStruct(), entries, dropped.getPhysicalDocStruct().getAllChildren());
+        assertEquals(4 + 4 * 4, created);
+        assertEquals(2, getDepth(dropped.getLogicalDocStruct()));
+    }
+
+    /**
+     * Creates the structure for a synthetic outline with more than 100000 entries and logs the duration. Only runs if the system property
+     * 'pdfextraction.benchmark.outline' is set to true, e.g.
+     * 
+     * <pre>
+     * mvn test -Dtest=OutlineStructureBuilderTest -Dpdfextraction.benchmark.outline=true
+     * </pre>
+     */
+    @Test
+    public void benchmarkDeepOutline() throws UGHException {
+        assumeTrue(Boolean.getBoolean("pdfextraction.benchmark.outline"));
+        List<OutlineEntry> entries = createOutline(6, 7);
+        DigitalDocument document = createDocument(5000);
+
+        long start = System.nanoTime();
+        int created = createBuilder(document, 0, true).build(document.getLogicalDocStruct(), entries,
+                document.getPhysicalDocStruct().getAllChildren());
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        logger.info("Created " + created + " structure elements with depth " + getDepth(document.getLogicalDocStruct()) + " for 5000 pages in "
+                + millis + " ms");
+
+        assertEquals(entries.size(), created);
+    }
+
+    private OutlineStructureBuilder createBuilder(DigitalDocument document, int maxDepth, boolean flatten) {
+        DocStructType chapter = prefs.getDocStrctTypeByName("Chapter");
+        return new OutlineStructureBuilder(document, prefs, chapter, maxDepth, flatten);
+    }
+
+    private DigitalDocument createDocument(int numberOfPages) throws UGHException {
+        DigitalDocument document = new DigitalDocument();
+        document.setLogicalDocStruct(document.createDocStruct(prefs.getDocStrctTypeByName("Monograph")));
+        DocStruct boundBook = document.createDocStruct(prefs.getDocStrctTypeByName("BoundBook"));
+        document.setPhysicalDocStruct(boundBook);
+        DocStructType pageType = prefs.getDocStrctTypeByName("page");
+        for (int i = 0; i < numberOfPages; i++) {
+            boundBook.addChild(document.createDocStruct(pageType));
+        }
+        return document;
+    }
+
+    /**
+     * Create a balanced outline of the given depth in which each entry has the given number of children. The entries point to ascending pages
+     */
+    private static List<OutlineEntry> createOutline(int depth, int childrenPerEntry) {
+        List<OutlineEntry> entries = new ArrayList<>();
+        addEntries(entries, 0, depth, childrenPerEntry);
+        return entries;
+    }
+
+    private static void addEntries(List<OutlineEntry> entries, int level, int depth, int childrenPerEntry) {
+        if (level >= depth) {
+            return;
+        }
+        for (int i = 0; i < childrenPerEntry; i++) {
+            entries.add(new OutlineEntry("Entry " + entries.size(), level, entries.size() / 40 + 1));
+            addEntries(entries, level + 1, depth, childrenPerEntry);
+        }
+    }
+
+    private static int getDepth(DocStruct docStruct) {
+        int depth = 0;
+        if (docStruct.getAllChildren() != null) {
+            for (DocStruct child : docStruct.getAllChildren()) {
+                depth = Math.max(depth, getDepth(child) + 1);
+            }
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,89 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PageContentDetectorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDetectBlankAndDuplicatePages() throws IOException {
+        File blank = writeImage("00000001.png", false);
+        File content = writeImage("00000002.png", true);
+        File duplicate = writeImage("00000003.png", true);
+        File blankWithText = writeImage("00000004.png", false);
+
+        PageContentDetector detector = new PageContentDetector(0.001, 4);
+        assertTrue(detector.analyze(blank, false, null).isBlank());
+        PageContentDetector.PageInfo contentPage = detector.analyze(content, true, null);
+        assertFalse(contentPage.isBlank());
+        assertFalse(contentPage.isDuplicate());
+        assertEquals("00000002.png", detector.analyze(duplicate, true, null).getDuplicateOf());
+        assertFalse(detector.analyze(blankWithText, true, null).isBlank());
+    }
+
+    @Test
+    public void testDigestWholeFile() throws IOException {
+        File content = writeImage("00000001.png", true);
+        MessageDigest digest = ChecksumManifest.createDigest();
+        assertFalse(new PageContentDetector(0.001, 4).analyze(content, true, digest).isBlank());
+        String expected = HexFormat.of().formatHex(ChecksumManifest.createDigest().digest(Files.readAllBytes(content.toPath())));
+        assertEquals(expected, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    @Test
+    public void testWriteBilevel() throws IOException {
+        File blank = writeImage("00000001.png", false);
+        MessageDigest digest = ChecksumManifest.createDigest();
+        assertTrue(PageContentDetector.writeBilevel(blank, digest));
+        assertEquals(1, ImageIO.read(blank).getColorModel().getPixelSize());
+        // the digest covers the new image
+        String expected = HexFormat.of().formatHex(ChecksumManifest.createDigest().digest(Files.readAllBytes(blank.toPath())));
+        assertEquals(expected, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    @Test
+    public void testWriteBilevelKeepsResolution() throws Exception {
+        File blank = new File(folder.getRoot(), "00000001.tif");
+        StreamingImageWriter.writeImage(ImageIO.read(writeImage("blank.png", false)), blank, "tiff", 300, null);
+
+        assertTrue(PageContentDetector.writeBilevel(blank, null));
+        assertEquals(1, ImageIO.read(blank).getColorModel().getPixelSize());
+        assertEquals(25.4 / 300, StreamingImageWriterTest.getPixelSize(blank), 0.0001);
+    }
+
+    private File writeImage(String name, boolean withContent) throws IOException {
+        BufferedImage image = new BufferedImage(800, 1000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, 800, 1000);
+        if (withContent) {
+            g.setColor(Color.BLACK);
+            for (int y = 100; y < 900; y += 40) {
+                g.fillRect(100, y, 300 + (y % 7) * 50, 15);
+            }
+        }
+        g.dispose();
+        File file = new File(folder.getRoot(), name);
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+}
@@ -0,0 +1,68 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.digiverso.pdf.PDFConverter;
+
+/**
+ * Compares size and duration of the plain page pdf split with the optimized split. Only runs if the system property
+ * 'pdfextraction.benchmark.pdf' points to a pdf file, e.g.
+ * 
+ * <pre>
+ * mvn test -Dtest=PagePdfOptimizerBenchmarkTest -Dpdfextraction.benchmark.pdf=/path/to/book.pdf -Dpdfextraction.benchmark.tools=ghostscript,qpdf
+ * </pre>
+ */
+public class PagePdfOptimizerBenchmarkTest {
+
+    private static final Logger logger = Logger.getLogger(PagePdfOptimizerBenchmarkTest.class);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void benchmarkSplit() throws Exception {
+        String pdfPath = System.getProperty("pdfextraction.benchmark.pdf");
+        assumeTrue(StringUtils.isNotBlank(pdfPath));
+        File pdf = new File(pdfPath);
+        List<String> tools = Arrays.asList(System.getProperty("pdfextraction.benchmark.tools", "ghostscript").split(","));
+
+        long start = System.nanoTime();
+        List<File> pages = PDFConverter.writeSinglePagePdfs(pdf, folder.newFolder("pages"), 1);
+        long splitMillis = (System.nanoTime() - start) / 1_000_000;
+        long splitBytes = getSize(pages);
+
+        PagePdfOptimizer optimizer = new PagePdfOptimizer(tools, Runtime.getRuntime().availableProcessors(), folder.newFolder("temp"));
+        start = System.nanoTime();
+        optimizer.optimize(pages);
+        long optimizeMillis = (System.nanoTime() - start) / 1_000_000;
+
+        logger.info("Source file:      " + pdf.length() + " bytes, " + pages.size() + " pages");
+        logger.info("Plain split:      " + splitBytes + " bytes in " + splitMillis + " ms");
+        logger.info("Optimized split:  " + getSize(pages) + " bytes in " + (splitMillis + optimizeMillis) + " ms (" + optimizeMillis
+                + " ms optimization with " + String.join(", ", tools) + ")");
+
+        assertEquals(splitBytes, optimizer.getBytesBefore());
+        assertTrue(getSize(pages) <= splitBytes);
+    }
+
+    private static long getSize(List<File> files) throws IOException {
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,50 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PagePdfOptimizerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testKeepPagesWhichCannotBeOptimized() throws Exception {
+        File pageFolder = folder.newFolder("pages");
+        File tempFolder = folder.newFolder("temp");
+        List<File> pages = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            File page = new File(pageFolder, String.format("%08d.pdf", i));
+            Files.writeString(page.toPath(), "page " + i + " with unused resources", StandardCharsets.UTF_8);
+            pages.add(page);
+        }
+
+        PagePdfOptimizer optimizer = new PagePdfOptimizer(List.of("first", "second"), 2, tempFolder) {
+            @Override
+            protected List<String> getCommand(String tool, Path input, Path output) {
+                // the second tool fails for the second page
+                String script = "second".equals(tool) && input.getFileName().toString().startsWith("00000002")
+                        ? "exit 1" : "cut -d ' ' -f 1,2 \"$0\" > \"$1\"";
+                return List.of("sh", "-c", script, input.toString(), output.toString());
+            }
+        };
+        List<File> failedPages = optimizer.optimize(pages);
+
+        assertEquals(List.of(pages.get(1)), failedPages);
+        assertEquals("page 1\n", Files.readString(pages.get(0).toPath(), StandardCharsets.UTF_8));
+        assertEquals("page 2 with unused resources", Files.readString(pages.get(1).toPath(), StandardCharsets.UTF_8));
+        assertEquals("page 4\n", Files.readString(pages.get(3).toPath(), StandardCharsets.UTF_8));
+        assertEquals(4, pageFolder.list().length);
+        assertEquals(0, tempFolder.list().length);
+    }
+}
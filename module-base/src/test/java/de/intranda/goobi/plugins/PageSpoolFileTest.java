@@ -0,0 +1,84 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PageSpoolFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAppendEvents() throws IOException {
+        Path spool = folder.getRoot().toPath().resolve("spool").resolve("pages.tsv");
+        File pdf = new File("test.pdf");
+        File text = folder.newFile("00000003.txt");
+        try (PageSpoolFile sink = new PageSpoolFile(spool)) {
+            sink.pageCompleted(new PageCompletedEvent(12, pdf, ExtractionResult.Stage.TEXT, 3, text));
+            // lines are visible to readers before the spool file is closed
+            assertEquals(List.of("12\tTEXT\t3\t" + text.getAbsolutePath()), Files.readAllLines(spool, StandardCharsets.UTF_8));
+            sink.extractionFinished(12, 5);
+        }
+        try (PageSpoolFile sink = new PageSpoolFile(spool)) {
+            sink.extractionFinished(13, 0);
+        }
+
+        List<String> lines = Files.readAllLines(spool, StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertEquals("12\t" + PageSpoolFile.FINISHED + "\t5\t", lines.get(1));
+        assertEquals("13\t" + PageSpoolFile.FINISHED + "\t0\t", lines.get(2));
+    }
+
+    @Test
+    public void testAppendFailure() throws IOException {
+        Path spool = folder.getRoot().toPath().resolve("pages.tsv");
+        try (PageSpoolFile sink = new PageSpoolFile(spool)) {
+            sink.extractionFailed(12, new IOException("disk\tfull\nagain"));
+        }
+
+        List<String> lines = Files.readAllLines(spool, StandardCharsets.UTF_8);
+        assertEquals(List.of("12\t" + PageSpoolFile.FAILED + "\t\tjava.io.IOException: disk full again"), lines);
+    }
+
+    @Test
+    public void testConcurrentEvents() throws Exception {
+        Path spool = folder.getRoot().toPath().resolve("pages.tsv");
+        File pdf = new File("test.pdf");
+        try (PageSpoolFile sink = new PageSpoolFile(spool)) {
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            for (int page = 1; page <= 200; page++) {
+                PageCompletedEvent event = new PageCompletedEvent(1, pdf, ExtractionResult.Stage.ALTO, page, new File(page + ".xml"));
+                executor.submit(() -> sink.pageCompleted(event));
+            }
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        List<String> lines = Files.readAllLines(spool, StandardCharsets.UTF_8);
+        assertEquals(200, lines.size());
+        List<Integer> pages = new ArrayList<>();
+        for (String line : lines) {
+            String[] fields = line.split("\t");
+            assertEquals(4, fields.length);
+            pages.add(Integer.parseInt(fields[2]));
+        }
+        pages.sort(null);
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i + 1, (int) pages.get(i));
+        }
+    }
+}
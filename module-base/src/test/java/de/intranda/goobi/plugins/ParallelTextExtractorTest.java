@@ -0,0 +1,123 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.digiverso.files.naming.NumberFormatNamer;
+import de.intranda.digiverso.pdf.PDFConverter;
+import de.intranda.digiverso.pdf.exception.PDFWriteException;
+
+public class ParallelTextExtractorTest {
+
+    private static final int PAGES = 23;
+    private static final int COUNTER = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File pdf;
+    private File tempFolder;
+
+    @Before
+    public void setup() throws IOException {
+        PDFConverter.setFileNamingStrategy(new NumberFormatNamer("%08d"));
+        pdf = folder.newFile("test.pdf");
+        new SyntheticPdf(1, PAGES).write(pdf.toPath());
+        tempFolder = folder.newFolder("temp");
+    }
+
+    @Test
+    public void testFullTextMatchesSequentialExtraction() throws Exception {
+        List<File> sequential = PDFConverter.writeFullText(pdf, folder.newFolder("sequential"), "utf-8", COUNTER);
+        List<File> parallel;
+        try (ParallelTextExtractor extractor = new ParallelTextExtractor(pdf, tempFolder, 4, "%08d")) {
+            parallel = extractor.writeFullText(folder.newFolder("parallel"), "utf-8", COUNTER);
+        }
+
+        assertEquals(PAGES, parallel.size());
+        assertEquals(getNames(sequential), getNames(parallel));
+        for (int i = 0; i < PAGES; i++) {
+            String text = read(parallel.get(i));
+            assertEquals(read(sequential.get(i)), text);
+            assertTrue(text.contains(SyntheticPdf.getPageText(1, i + 1)));
+        }
+    }
+
+    @Test
+    public void testAltoFilesMatchSequentialExtraction() throws Exception {
+        List<File> images = new ArrayList<>();
+        File imageFolder = folder.newFolder("images");
+        for (int i = 0; i < PAGES; i++) {
+            images.add(new File(imageFolder, String.format("%08d.tif", COUNTER + i)));
+        }
+        List<File> sequential = PDFConverter.writeAltoFiles(pdf, folder.newFolder("sequential"), images, false, COUNTER);
+        List<File> parallel;
+        try (ParallelTextExtractor extractor = new ParallelTextExtractor(pdf, tempFolder, 3, "%08d")) {
+            parallel = extractor.writeAltoFiles(folder.newFolder("parallel"),
+                    pageCounter -> Collections.singletonList(images.get(pageCounter - COUNTER)), COUNTER);
+        }
+
+        assertEquals(getNames(sequential), getNames(parallel));
+        for (int i = 0; i < PAGES; i++) {
+            assertEquals(read(sequential.get(i)), read(parallel.get(i)));
+        }
+    }
+
+    @Test
+    public void testSplitIsSharedAndRemoved() throws Exception {
+        try (ParallelTextExtractor extractor = new ParallelTextExtractor(pdf, tempFolder, 2, "%08d")) {
+            extractor.writeFullText(folder.newFolder("text"), "utf-8", 1);
+            extractor.writeAltoFiles(folder.newFolder("alto"), pageCounter -> Collections.emptyList(), 1);
+            assertEquals(1, tempFolder.list().length);
+        }
+        assertEquals(0, tempFolder.list().length);
+    }
+
+    @Test
+    public void testUseWrittenPagePdfs() throws Exception {
+        List<File> pages = PDFConverter.writeSinglePagePdfs(pdf, folder.newFolder("pdf"), COUNTER);
+        try (ParallelTextExtractor extractor = new ParallelTextExtractor(pdf, tempFolder, 2, "%08d")) {
+            extractor.usePagePdfs(pages);
+            List<File> text = extractor.writeFullText(folder.newFolder("text"), "utf-8", COUNTER);
+            assertEquals(PAGES, text.size());
+            assertEquals(0, tempFolder.list().length);
+        }
+        for (File page : pages) {
+            assertTrue(page.exists());
+        }
+    }
+
+    @Test(expected = PDFWriteException.class)
+    public void testRejectFilesNotNamedAfterTheirPage() throws Exception {
+        PDFConverter.setFileNamingStrategy(new NumberFormatNamer("%04d"));
+        try (ParallelTextExtractor extractor = new ParallelTextExtractor(pdf, tempFolder, 2, "%08d")) {
+            extractor.writeFullText(folder.newFolder("text"), "utf-8", COUNTER);
+        }
+    }
+
+    private static List<String> getNames(List<File> files) {
+        List<String> names = new ArrayList<>();
+        for (File file : files) {
+            names.add(file.getName());
+        }
+        return names;
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
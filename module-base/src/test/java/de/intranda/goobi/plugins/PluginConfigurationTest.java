@@ -0,0 +1,124 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.exceptions.PluginConfigurationException;
+
+public class PluginConfigurationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void clearCache() {
+        PluginConfiguration.clearCache();
+    }
+
+    @Test
+    public void testReadValues() throws Exception {
+        PluginConfiguration config = new PluginConfiguration(readConfig(writeConfig("<images><resolution>150</resolution>"
+                + "<generatorParameter>-cropbox</generatorParameter><generatorParameter>-q</generatorParameter></images>"
+                + "<properties><fulltext><name>OCRDone</name><value exists=\"true\">YES</value></fulltext></properties>")));
+        assertEquals(150, config.getImageResolution());
+        assertEquals("tif", config.getImageFormat());
+        assertEquals(List.of("-cropbox", "-q"), List.of(config.getImageGeneratorParams(config.getImageGenerator())));
+        assertEquals("OCRDone", config.getFulltextPropertyName());
+        assertEquals("YES", config.getFulltextPropertyTrueValue());
+        assertEquals("FALSE", config.getFulltextPropertyFalseValue());
+        assertTrue(config.isWriteAltoFiles());
+        assertFalse(config.isWriteChecksums());
+        assertEquals("{processpath}/checksums", config.getChecksumsDestination());
+        assertEquals(List.of("ghostscript"), config.getOptimizationTools());
+    }
+
+    @Test
+    public void testGeneratorSpecificParameters() throws Exception {
+        PluginConfiguration config = new PluginConfiguration(readConfig(writeConfig("<images><generator>auto</generator>"
+                + "<generatorParameter generator=\"pdftoppm\">-cropbox</generatorParameter><generatorParameter>-q</generatorParameter>"
+                + "<auto><generator>pdftoppm</generator><generator>ghostscript</generator><minRuns>5</minRuns></auto></images>")));
+        assertTrue(config.isAutoImageGenerator());
+        assertEquals(List.of("pdftoppm", "ghostscript"), config.getAutoGenerators());
+        assertEquals(5, config.getAutoGeneratorMinRuns());
+        assertEquals(List.of("-cropbox", "-q"), List.of(config.getImageGeneratorParams("pdftoppm")));
+        assertEquals(List.of("-q"), List.of(config.getImageGeneratorParams("ghostscript")));
+    }
+
+    @Test
+    public void testCacheUntilFileChanges() throws Exception {
+        File configFile = writeConfig("<images><resolution>150</resolution></images>");
+        AtomicInteger loads = new AtomicInteger();
+        PluginConfiguration.ConfigurationLoader loader = () -> {
+            loads.incrementAndGet();
+            try {
+                return readConfig(configFile);
+            } catch (ConfigurationException e) {
+                throw new PluginConfigurationException(e);
+            }
+        };
+
+        PluginConfiguration first = PluginConfiguration.getInstance("project", "step", configFile.toPath(), loader);
+        PluginConfiguration second = PluginConfiguration.getInstance("project", "step", configFile.toPath(), loader);
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+
+        PluginConfiguration otherStep = PluginConfiguration.getInstance("project", "other step", configFile.toPath(), loader);
+        assertNotSame(first, otherStep);
+        assertEquals(2, loads.get());
+
+        Path path = configFile.toPath();
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 1000));
+        PluginConfiguration third = PluginConfiguration.getInstance("project", "step", path, loader);
+        assertNotSame(first, third);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testDoNotCacheWithoutModificationTime() throws Exception {
+        File configFile = writeConfig("<images><resolution>150</resolution></images>");
+        AtomicInteger loads = new AtomicInteger();
+        PluginConfiguration.ConfigurationLoader loader = () -> {
+            loads.incrementAndGet();
+            try {
+                return readConfig(configFile);
+            } catch (ConfigurationException e) {
+                throw new PluginConfigurationException(e);
+            }
+        };
+        Path missing = folder.getRoot().toPath().resolve("missing.xml");
+
+        PluginConfiguration first = PluginConfiguration.getInstance("project", "step", missing, loader);
+        PluginConfiguration second = PluginConfiguration.getInstance("project", "step", missing, loader);
+        assertNotSame(first, second);
+        assertEquals(2, loads.get());
+        assertNotSame(second, PluginConfiguration.getInstance("project", "step", configFile.toPath(), loader));
+        assertEquals(3, loads.get());
+    }
+
+    private File writeConfig(String content) throws Exception {
+        File file = folder.newFile("plugin_intranda_step_pdf-extraction.xml");
+        Files.writeString(file.toPath(), "<config><project>*</project><step>*</step>" + content + "</config>");
+        return file;
+    }
+
+    private static XMLConfiguration readConfig(File file) throws ConfigurationException {
+        return new XMLConfiguration(file);
+    }
+}
@@ -0,0 +1,199 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataFormatImpl;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.digiverso.pdf.exception.PDFWriteException;
+
+public class StreamingImageWriterTest {
+
+    private static final int PAGES = 12;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteImages() throws Exception {
+        Path stream = writeStream(PAGES);
+        File destFolder = folder.newFolder("images");
+        List<File> files;
+        try (StreamingImageWriter writer = new CommandImageWriter("tif", 3, "cat", stream.toString())) {
+            files = writer.writeImages(new File("test.pdf"), destFolder, 5);
+        }
+
+        assertEquals(PAGES, files.size());
+        assertEquals(PAGES, destFolder.list().length);
+        for (int page = 0; page < PAGES; page++) {
+            File file = files.get(page);
+            assertEquals(String.format("%08d.tif", 5 + page), file.getName());
+            BufferedImage image = ImageIO.read(file);
+            assertEquals(20, image.getWidth());
+            assertEquals(NetpbmReaderTest.getColor(7, 3, page), image.getRGB(7, 3) & 0xffffff);
+        }
+        assertEquals(25.4 / 150, getPixelSize(files.get(0)), 0.0001);
+    }
+
+    @Test
+    public void testReportEachWrittenImage() throws Exception {
+        Path stream = writeStream(PAGES);
+        File destFolder = folder.newFolder("images");
+        Map<Integer, File> reported = new ConcurrentHashMap<>();
+        List<File> files;
+        try (StreamingImageWriter writer = new CommandImageWriter("png", 3, "cat", stream.toString())) {
+            files = writer.writeImages(new File("test.pdf"), destFolder, 1, (file, index) -> {
+                assertTrue(file.isFile());
+                reported.put(index, file);
+            }, null);
+        }
+
+        assertEquals(PAGES, reported.size());
+        for (int page = 0; page < PAGES; page++) {
+            assertEquals(files.get(page), reported.get(page));
+        }
+    }
+
+    @Test
+    public void testChecksumsAndCompression() throws Exception {
+        Path stream = writeStream(PAGES);
+        File destFolder = folder.newFolder("images");
+        ChecksumManifest manifest = new ChecksumManifest(destFolder.toPath(), folder.getRoot().toPath().resolve("images.sha256"));
+        List<File> files;
+        try (StreamingImageWriter writer = new CommandImageWriter("tif", 3, "cat", stream.toString())) {
+            files = writer.writeImages(new File("test.pdf"), destFolder, 1, null, manifest);
+        }
+
+        ChecksumManifest expected = new ChecksumManifest(destFolder.toPath(), folder.getRoot().toPath().resolve("expected.sha256"));
+        expected.addFiles(files);
+        for (File file : files) {
+            assertNotNull(manifest.getChecksum(file.getName()));
+            assertEquals(expected.getChecksum(file.getName()), manifest.getChecksum(file.getName()));
+        }
+        assertEquals(StreamingImageWriter.TIFF_COMPRESSION, getCompression(files.get(0)));
+    }
+
+    @Test
+    public void testRemoveImagesOnGeneratorError() throws Exception {
+        Path stream = writeStream(4);
+        File destFolder = folder.newFolder("images");
+        try (StreamingImageWriter writer = new CommandImageWriter("png", 2, "sh", "-c", "cat '" + stream + "'; echo broken >&2; exit 3")) {
+            writer.writeImages(new File("test.pdf"), destFolder, 1);
+            fail("The generator error was not reported");
+        } catch (PDFWriteException e) {
+            assertTrue(e.getMessage().contains("broken"));
+        }
+        assertEquals(0, destFolder.list().length);
+    }
+
+    @Test
+    public void testStopGeneratorOnWriteError() throws Exception {
+        Path stream = writeStream(4);
+        File missingFolder = new File(folder.getRoot(), "missing");
+        long start = System.currentTimeMillis();
+        try (StreamingImageWriter writer = new CommandImageWriter("tif", 2, "sh", "-c", "cat '" + stream + "'; exec sleep 60")) {
+            writer.writeImages(new File("test.pdf"), missingFolder, 1);
+            fail("The write error was not reported");
+        } catch (PDFWriteException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Error writing images"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 30_000);
+    }
+
+    @Test
+    public void testCommand() {
+        String[] params = { "-sDEVICE=tiffg4", "-dTextAlphaBits=4", "-o", "out.tif", "-sOutputFile=out.tif" };
+        try (StreamingImageWriter writer = new StreamingImageWriter("ghostscript", 300, "tif", params, "%08d", 1)) {
+            List<String> command = writer.getCommand(new File("test.pdf"));
+            assertTrue(command.contains("-dSAFER"));
+            assertTrue(command.contains("-sstdout=%stderr"));
+            assertTrue(command.contains("-dTextAlphaBits=4"));
+            assertEquals(1, command.stream().filter(param -> param.startsWith("-sDEVICE=")).count());
+            assertEquals(1, command.stream().filter(param -> param.startsWith("-sOutputFile=")).count());
+            assertFalse(command.contains("out.tif"));
+        }
+        params = new String[] { "-cropbox", "-tiff", "-tiffcompression", "lzw", "-gray", "-jpegopt", "quality=90" };
+        assertEquals(List.of("-cropbox", "-gray"), List.of(StreamingImageWriter.getStreamingParams("pdftoppm", params)));
+    }
+
+    @Test
+    public void testSupportedFormats() {
+        assertTrue(StreamingImageWriter.isSupported("pdftoppm", "tif"));
+        assertTrue(StreamingImageWriter.isSupported("ghostscript", "JPG"));
+        assertFalse(StreamingImageWriter.isSupported("pdftoppm", "jpegcmyk"));
+        assertFalse(StreamingImageWriter.isSupported("auto", "tif"));
+    }
+
+    private Path writeStream(int pages) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int page = 0; page < pages; page++) {
+            NetpbmReaderTest.writePpm(out, 20, 10, page);
+        }
+        Path stream = folder.getRoot().toPath().resolve("pages.ppm");
+        Files.write(stream, out.toByteArray());
+        return stream;
+    }
+
+    static double getPixelSize(File file) throws Exception {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = ImageIO.getImageReaders(in).next();
+            reader.setInput(in);
+            IIOMetadata metadata = reader.getImageMetadata(0);
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(IIOMetadataFormatImpl.standardMetadataFormatName);
+            IIOMetadataNode size = (IIOMetadataNode) root.getElementsByTagName("HorizontalPixelSize").item(0);
+            reader.dispose();
+            return Double.parseDouble(size.getAttribute("value"));
+        }
+    }
+
+    private static String getCompression(File file) throws Exception {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = ImageIO.getImageReaders(in).next();
+            reader.setInput(in);
+            IIOMetadata metadata = reader.getImageMetadata(0);
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(IIOMetadataFormatImpl.standardMetadataFormatName);
+            IIOMetadataNode compression = (IIOMetadataNode) root.getElementsByTagName("CompressionTypeName").item(0);
+            reader.dispose();
+            return compression.getAttribute("value");
+        }
+    }
+
+    /**
+     * Runs the given command instead of a generator
+     */
+    private static class CommandImageWriter extends StreamingImageWriter {
+
+        private final List<String> command;
+
+        private CommandImageWriter(String format, int threads, String... command) {
+            super("pdftoppm", 150, format, null, "%08d", threads);
+            this.command = List.of(command);
+        }
+
+        @Override
+        protected List<String> getCommand(File pdfFile) {
+            return command;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.digiverso.pdf.exception.PDFWriteException;
+
+public class SupervisedImageWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File pdf;
+    private File destFolder;
+    private File tempFolder;
+
+    @Before
+    public void setup() throws IOException {
+        pdf = folder.newFile("test.pdf");
+        destFolder = folder.newFolder("images");
+        tempFolder = folder.newFolder("temp");
+    }
+
+    @Test
+    public void testImagesAreNamedByPage() throws Exception {
+        List<File> files;
+        try (FakeImageWriter writer = new FakeImageWriter(12, 10, Collections.emptySet(), Collections.emptySet())) {
+            files = writer.writeImages(pdf, destFolder, 12, 5);
+            assertTrue(writer.getDegradedPages().isEmpty());
+        }
+
+        assertEquals(12, files.size());
+        for (int page = 1; page <= 12; page++) {
+            File file = files.get(page - 1);
+            assertEquals(String.format("%08d.tif", 4 + page), file.getName());
+            assertEquals("page " + page + " pdftoppm 50", read(file));
+        }
+        assertEquals(0, tempFolder.list().length);
+    }
+
+    @Test
+    public void testRetriesKeepPagesAligned() throws Exception {
+        List<File> files;
+        List<DegradedPage> degradedPages;
+        try (FakeImageWriter writer = new FakeImageWriter(2, 1, Set.of(2), Set.of(3))) {
+            files = writer.writeImages(pdf, destFolder, 4, 1);
+            degradedPages = writer.getDegradedPages();
+        }
+
+        assertEquals(4, files.size());
+        assertEquals(4, destFolder.list().length);
+        assertEquals("page 1 pdftoppm 50", read(files.get(0)));
+        assertEquals("page 2 ghostscript 50", read(files.get(1)));
+        assertEquals("page 4 pdftoppm 50", read(files.get(3)));
+        // the page which failed with all settings is replaced by a blank page
+        assertEquals("00000003.tif", files.get(2).getName());
+        BufferedImage placeholder = ImageIO.read(files.get(2));
+        assertEquals(Math.round(11.69 * 50), placeholder.getHeight());
+        assertEquals(0xffffff, placeholder.getRGB(10, 10) & 0xffffff);
+
+        assertEquals(2, degradedPages.size());
+        assertEquals(ExtractionResult.Stage.IMAGES, degradedPages.get(0).getStage());
+        assertEquals(2, degradedPages.get(0).getPageNumber());
+        assertFalse(degradedPages.get(0).isMissing());
+        assertEquals(3, degradedPages.get(1).getFileCounter());
+        assertTrue(degradedPages.get(1).isMissing());
+        // the output of the attempts which timed out is not left behind
+        assertEquals(0, tempFolder.list().length);
+    }
+
+    @Test
+    public void testTimeoutKillsOnlyTheAttempt() throws Exception {
+        // another process working on the same pdf file
+        Process other = new ProcessBuilder("sh", "-c", "sleep 27; true", pdf.getAbsolutePath()).start();
+        List<Process> attempts = new ArrayList<>();
+        try (SupervisedImageWriter writer = new SupervisedImageWriter("pdftoppm", "", 50, 0, "png", null, "%08d", tempFolder, 1, 1) {
+            @Override
+            protected List<File> render(File pdfFile, File renderFolder, File renderTempFolder, Integer counter, int resolution, String generator,
+                    String[] params) throws PDFWriteException {
+                try {
+                    Process process =
+                            new ProcessBuilder("sh", "-c", "sleep 27; true", pdfFile.getAbsolutePath(), renderFolder.getAbsolutePath()).start();
+                    attempts.add(process);
+                    process.waitFor();
+                } catch (IOException | InterruptedException e) {
+                    throw new PDFWriteException(e.toString());
+                }
+                return Collections.emptyList();
+            }
+        }) {
+            List<File> files = writer.writeImages(pdf, destFolder, 1, 1);
+            assertEquals(1, files.size());
+            assertTrue(writer.getDegradedPages().get(0).isMissing());
+        }
+
+        assertEquals(2, attempts.size());
+        for (Process attempt : attempts) {
+            assertTrue(attempt.waitFor(5, TimeUnit.SECONDS));
+        }
+        assertTrue(other.isAlive());
+        other.destroyForcibly();
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes text files instead of images. Pages in the hanging set never finish with pdftoppm, pages in the broken set fail with all settings
+     */
+    private class FakeImageWriter extends SupervisedImageWriter {
+
+        private final Set<Integer> hangingPages;
+        private final Set<Integer> brokenPages;
+
+        private FakeImageWriter(int chunkSize, long pageTimeout, Set<Integer> hangingPages, Set<Integer> brokenPages) {
+            super("pdftoppm", "ghostscript", 50, 30, "tif", null, "%08d", tempFolder, chunkSize, pageTimeout);
+            this.hangingPages = hangingPages;
+            this.brokenPages = brokenPages;
+        }
+
+        @Override
+        protected List<File> render(File pdfFile, File renderFolder, File renderTempFolder, Integer counter, int resolution, String generator,
+                String[] params) throws PDFWriteException {
+            int firstPage;
+            int lastPage;
+            if ("ghostscript".equals(generator)) {
+                firstPage = Integer.parseInt(params[params.length - 2].substring("-dFirstPage=".length()));
+                lastPage = Integer.parseInt(params[params.length - 1].substring("-dLastPage=".length()));
+            } else {
+                firstPage = Integer.parseInt(params[params.length - 3]);
+                lastPage = Integer.parseInt(params[params.length - 1]);
+            }
+            List<File> files = new ArrayList<>();
+            try {
+                for (int page = firstPage; page <= lastPage; page++) {
+                    if (brokenPages.contains(page)) {
+                        throw new PDFWriteException("Cannot render page " + page);
+                    }
+                    // named like the output of pdftoppm, which is not the counter and not padded to a fixed width
+                    File file = new File(renderFolder, "page-" + page + ".tif");
+                    Files.write(file.toPath(), ("page " + page + " " + generator + " " + resolution).getBytes(StandardCharsets.UTF_8));
+                    files.add(0, file);
+                    if (hangingPages.contains(page) && "pdftoppm".equals(generator)) {
+                        Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                throw new PDFWriteException(e.toString());
+            }
+            return files;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package de.intranda.goobi.plugins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes small text pdf files with an outline for tests. Each page contains the line 'Run {run} page {page}', so that extracted text can be assigned
+ * to the run which created it. The outline contains one entry per page.
+ */
+public class SyntheticPdf {
+
+    private final int run;
+    private final int numberOfPages;
+
+    public SyntheticPdf(int run, int numberOfPages) {
+        this.run = run;
+        this.numberOfPages = numberOfPages;
+    }
+
+    public static String getPageText(int run, int page) {
+        return "Run " + run + " page " + page;
+    }
+
+    public void write(Path file) throws IOException {
+        // object numbers: 1 catalog, 2 pages, 3 font, 4 outline root, then page, content and outline entry for each page
+        int firstPageObject = 5;
+        List<String> objects = new ArrayList<>();
+        objects.add("<< /Type /Catalog /Pages 2 0 R /Outlines 4 0 R /PageMode /UseOutlines >>");
+        StringBuilder kids = new StringBuilder();
+        for (int page = 0; page < numberOfPages; page++) {
+            kids.append(getPageObject(firstPageObject, page)).append(" 0 R ");
+        }
+        objects.add("<< /Type /Pages /Kids [" + kids.toString().trim() + "] /Count " + numberOfPages + " >>");
+        objects.add("<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica >>");
+        objects.add("<< /Type /Outlines /First " + getOutlineObject(firstPageObject, 0) + " 0 R /Last "
+                + getOutlineObject(firstPageObject, numberOfPages - 1) + " 0 R /Count " + numberOfPages + " >>");
+        for (int page = 0; page < numberOfPages; page++) {
+            int pageObject = getPageObject(firstPageObject, page);
+            objects.add("<< /Type /Page /Parent 2 0 R /MediaBox [0 0 595 842] /Resources << /Font << /F1 3 0 R >> >> /Contents " + (pageObject + 1)
+                    + " 0 R >>");
+            String content = "BT /F1 24 Tf 72 720 Td (" + getPageText(run, page + 1) + ") Tj ET";
+            objects.add("<< /Length " + content.length() + " >>\nstream\n" + content + "\nendstream");
+            StringBuilder outline = new StringBuilder("<< /Title (Chapter " + (page + 1) + ") /Parent 4 0 R");
+            if (page > 0) {
+                outline.append(" /Prev ").append(getOutlineObject(firstPageObject, page - 1)).append(" 0 R");
+            }
+            if (page < numberOfPages - 1) {
+                outline.append(" /Next ").append(getOutlineObject(firstPageObject, page + 1)).append(" 0 R");
+            }
+            outline.append(" /Dest [").append(pageObject).append(" 0 R /Fit] >>");
+            objects.add(outline.toString());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, "%PDF-1.4\n");
+        List<Integer> offsets = new ArrayList<>();
+        for (int i = 0; i < objects.size(); i++) {
+            offsets.add(out.size());
+            write(out, (i + 1) + " 0 obj\n" + objects.get(i) + "\nendobj\n");
+        }
+        int xrefOffset = out.size();
+        write(out, "xref\n0 " + (objects.size() + 1) + "\n0000000000 65535 f \n");
+        for (int offset : offsets) {
+            write(out, String.format("%010d 00000 n \n", offset));
+        }
+        write(out, "trailer\n<< /Size " + (objects.size() + 1) + " /Root 1 0 R >>\nstartxref\n" + xrefOffset + "\n%%EOF\n");
+        Files.write(file, out.toByteArray());
+    }
+
+    private static int getPageObject(int firstPageObject, int page) {
+        return firstPageObject + page * 3;
+    }
+
+    private static int getOutlineObject(int firstPageObject, int page) {
+        return firstPageObject + page * 3 + 2;
+    }
+
+    private static void write(ByteArrayOutputStream out, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        out.write(bytes, 0, bytes.length);
+    }
+}